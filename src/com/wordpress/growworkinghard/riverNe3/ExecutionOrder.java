@@ -0,0 +1,137 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+/**
+ * @brief Recorder of the simulations of the nodes, shared by the tests of the
+ *        simulations
+ *
+ * @description The nodes of the SampleTrees call
+ *              ExecutionOrder#record(Component) when they are simulated. The
+ *              start, the end and the thread of each node are recorded, and a
+ *              result is computed from the results of its children: two
+ *              strategies which simulate each node after its children give the
+ *              same results.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+final class ExecutionOrder {
+
+    private final ConcurrentHashMap<Key, Integer> starts; //!< position of the start of each node
+    private final ConcurrentHashMap<Key, Integer> ends; //!< position of the end of each node
+    private final ConcurrentHashMap<Key, String> threads; //!< thread of each node
+    private final ConcurrentHashMap<Key, Double> results; //!< result of each node
+    private final AtomicInteger counter; //!< starts and ends so far
+    private final AtomicInteger repeated; //!< nodes simulated more than once
+
+    ExecutionOrder() {
+        this.starts = new ConcurrentHashMap<Key, Integer>();
+        this.ends = new ConcurrentHashMap<Key, Integer>();
+        this.threads = new ConcurrentHashMap<Key, String>();
+        this.results = new ConcurrentHashMap<Key, Double>();
+        this.counter = new AtomicInteger();
+        this.repeated = new AtomicInteger();
+    }
+
+    /**
+     * @brief Record the simulation of a node
+     *
+     * @description The result of the node is the square root of its key plus
+     *              half of the results of the children finished so far.
+     *
+     * @param[in] comp The node being simulated
+     */
+    void record(final Component comp) {
+        final Key key = comp.getConnections().getID();
+        if (starts.put(key, counter.getAndIncrement()) != null) repeated.incrementAndGet();
+        threads.put(key, Thread.currentThread().getName());
+
+        double result = Math.sqrt(key.getDouble());
+        for (Key child : comp.getConnections().getChildren()) {
+            Double input = results.get(child);
+            if (input != null) result += 0.5 * input;
+        }
+
+        results.put(key, result);
+        ends.put(key, counter.getAndIncrement());
+    }
+
+    /**
+     * @param[in] key The key of a node
+     * @return The position of the start of the node
+     */
+    int startOf(final Key key) {
+        return starts.get(key);
+    }
+
+    /**
+     * @param[in] key The key of a node
+     * @return The name of the thread which simulated the node
+     */
+    String threadOf(final Key key) {
+        return threads.get(key);
+    }
+
+    /**
+     * @return The number of nodes simulated so far
+     */
+    int size() {
+        return results.size();
+    }
+
+    /**
+     * @return A copy of the results of the nodes simulated so far
+     */
+    HashMap<Key, Double> getResults() {
+        return new HashMap<Key, Double>(results);
+    }
+
+    /**
+     * @brief Assert that each node of the tree has been simulated once, after
+     *        the end of its children
+     *
+     * @param[in] tree The tree structure
+     */
+    void assertPostOrder(final Map<Key, Component> tree) {
+        assertEquals("Node simulated more than once", 0, repeated.get());
+        assertEquals("Nodes not simulated", tree.keySet(), results.keySet());
+
+        for (Component comp : tree.values()) {
+            final Key key = comp.getConnections().getID();
+            for (Key child : comp.getConnections().getChildren())
+                if (tree.containsKey(child))
+                    assertTrue("Node " + key.getDouble() + " started before the end of a child",
+                               ends.get(child) < starts.get(key));
+        }
+    }
+
+}
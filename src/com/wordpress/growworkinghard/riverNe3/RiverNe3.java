@@ -154,6 +154,61 @@ import com.wordpress.growworkinghard.riverNe3.tree.building.decorator.Hydrometer
  * <strong>Factory patterns</strong> were implemented without having to specify
  * the exact class of the object that will be created.
  *
+ * @subsubsection Strategy Strategy Pattern for the simulations
+ *
+ * The execution of the simulations is decoupled from the tree as well. Each
+ * execution mode extends the abstract class simulation#Simulation, so the
+ * desired mode is selected just allocating it:
+ * <ul>
+ * <li>RunSimulations, a ready queue of nodes processed by a fixed thread
+ * pool;</li>
+ * <li>simulation#ForkJoinSimulation, a post-order fork/join of the sub-trees
+ * with work stealing;</li>
+ * <li>simulation#ThreadPerNodeSimulation, a thread (virtual when available)
+ * for each node, useful when the kernels are blocked on I/O;</li>
+ * <li>simulation#CriticalPathSimulation, a ready queue where the node with the
+ * longest path to the outlet is always run first;</li>
+ * <li>simulation#ClusteredSimulation, where connected sub-trees of similar cost
+ * (computed by simulation#SubtreePartitioner) are simulated sequentially by a
+ * single task;</li>
+ * <li>simulation#WavefrontSimulation, the layers are simulated one at a time,
+ * from the deepest to the root, with a join between two layers;</li>
+ * <li>simulation#PipelinedSimulation, a multi time-step simulation where the
+ * leaves run ahead of the outlet within a lookahead window;</li>
+ * <li>simulation#BlockedSimulation, a pipeline where each task runs a
+ * simulation#SimulationKernel over a block of time-steps;</li>
+ * <li>simulation#EnsembleSimulation, many scenarios over the same tree, with
+ * the members of each node simulated together by an
+ * simulation#EnsembleKernel;</li>
+ * <li>simulation#IncrementalSimulation, which keeps the outputs of the nodes
+ * and re-simulates only the changed sub-basins and their ancestors;</li>
+ * <li>simulation#ProcessSimulation, which splits the tree among worker JVMs
+ * connected over loopback TCP and simulates the upper part of the tree;</li>
+ * <li>simulation#AsyncSimulation, a graph of <tt>CompletableFuture</tt> with a
+ * future for each node, e.g. to use a hydrometer as soon as its sub-tree is
+ * finished.</li>
+ * </ul>
+ *
+ * The engines using a simulation#SimulationKernel own a buffer for the
+ * outputs of each node, and the kernel of a parent reads the buffers of its
+ * children without any copy. A different kernel can be bound to each type of
+ * node with simulation#NodeTypeKernel.
+ * A simulation#BlockedSimulation can write a simulation#Checkpoint every few
+ * blocks and a new run can resume from it, restoring the state of the
+ * simulation#StatefulKernel of each node.
+ *
+ * Any strategy can record the execution of each node with a
+ * simulation#Tracer, dumped in Chrome trace-event format at the end of the
+ * run.
+ *
+ * @code
+ * Simulation sim = new RunSimulations(binaryTree, executor, threadsNumber);
+ * // or
+ * Simulation sim = new ForkJoinSimulation(binaryTree, new ForkJoinPool());
+ *
+ * sim.run();
+ * @endcode
+ *
  * @section AddTree How add a tree
  *
  * To add a new tree at this flexible structure, you have to
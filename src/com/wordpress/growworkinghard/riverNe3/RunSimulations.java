@@ -18,32 +18,153 @@
  */
 package com.wordpress.growworkinghard.riverNe3;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import com.wordpress.growworkinghard.riverNe3.composite.Component;
 import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.Simulation;
 
+import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
 /**
  * @brief Run multithreading simulations from an executor pool
  *
+ * @description The scheduling is driven by <strong>dependency
+ *              counting</strong>: each node of the tree has an atomic counter
+ *              of the children whose simulation is not finished yet. At the
+ *              beginning only the leaves have the counter equal to 0, so they
+ *              are the only nodes in the <em>ready queue</em>. When a worker
+ *              completes a node, it decrements the counter of the parent and,
+ *              if it reaches 0, it pushes the parent in the ready queue. In
+ *              this way the tree structure is never scanned while the
+ *              simulation is running and each hand-off costs \f$O(1)\f$.
+ *              <p>
+ *              Idle workers don't spin: they are parked on a
+ *              <tt>Semaphore</tt> which holds a permit for each node in the
+ *              ready queue. Once the last node has been simulated, one extra
+ *              permit per worker is released in order to wake them up and let
+ *              them terminate.
+ *              </p>
+ *              <p>
+ *              The available parallelism changes during the run: wide among
+ *              the leaves, a single chain along the main stem. With
+ *              <code>enableAdaptiveWorkers</code> a controller samples the
+ *              depth of the ready queue and the utilisation of the workers
+ *              and resizes the set of <em>active</em> workers, never beyond
+ *              the available cores. Inactive workers wait on a monitor;
+ *              active workers above a new, smaller limit leave after the node
+ *              they are simulating, while those parked on the ready queue
+ *              hand the permit they are woken with back to the active ones.
+ *              Each decision is logged.
+ *              </p>
+ *              <p>
+ *              With <code>enableContinuation()</code> the thread completing
+ *              the last child of a node simulates the node itself, while the
+ *              outputs of the child are still in its cache, instead of handing
+ *              it off through the ready queue. The queue is left to the
+ *              leaves and to the idle workers, which take from it only when
+ *              they run out of work.
+ *              </p>
+ *              <p>
+ *              The order in which the nodes start is always recorded and
+ *              <code>replay(order)</code> makes a new run issue the nodes in
+ *              that order: each worker takes the next position of the order
+ *              and waits for that node to be ready. With a single thread the
+ *              nodes also start and finish in that order; with more threads
+ *              they are handed out in order, but their starts and ends can
+ *              interleave. A seeded order can
+ *              be generated with <code>seededOrder(tree, seed)</code>, so the
+ *              effects of the scheduler can be separated from the effects of
+ *              the kernels when benchmarking.
+ *              </p>
+ *              <p>
+ *              The progress of the run can be followed with
+ *              <code>getMetrics()</code> or through JMX after
+ *              <code>registerMBean()</code>. The counters are updated only by
+ *              the thread doing the work: the completed nodes, the waits and
+ *              the contention in <tt>LongAdder</tt>, the busy and idle time in
+ *              a slot per worker, so the hot path is never serialized. A
+ *              <em>wait</em> is counted when a worker finds no ready node and
+ *              blocks; the <em>contention</em> is the number of failed
+ *              compare-and-set on the counters of the parents, i.e. children
+ *              completing at the same time.
+ *              </p>
+ *              <p>
+ *              This is the default strategy of simulation#Simulation, running
+ *              on a fixed thread pool.
+ *              </p>
+ *
  * @author sidereus, francesco.serafin.3@gmail.com
  * @version 0.1
  * @date November 08, 2015
  * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
  */
 @ThreadSafe
-public class RunSimulations {
+public class RunSimulations extends Simulation implements RunSimulationsMXBean {
 
-    private volatile ConcurrentHashMap<Key, Component> tree; //!< tree structure
+    private final ConcurrentHashMap<Key, Component> tree; //!< tree structure
+    private final ConcurrentHashMap<Key, AtomicInteger> pendingChildren; //!< number of children of each node not simulated yet
+    private final ConcurrentLinkedQueue<Component> readyQueue; //!< nodes with all the children simulated
+    private final Semaphore readyNodes; //!< a permit for each node in the ready queue
+    private final AtomicInteger remainingNodes; //!< nodes not simulated yet
+    private final AtomicReference<RuntimeException> failure; //!< first exception thrown by a simulation
     private final CountDownLatch latch; //!< latch to synchronize the progress of threads
     private final ExecutorService executor; //!< executor to process tasks asynchronously
     private final int concurrencyLevel; //!< the running threads
+    private volatile boolean completed; //!< <code>true</code> when no more nodes have to be simulated
+    private final AtomicInteger busyWorkers; //!< workers simulating a node
+    private final Object standby; //!< monitor of the inactive workers
+    private volatile int activeWorkers; //!< workers allowed to take nodes from the ready queue
+    private volatile long samplingPeriod; //!< nanoseconds between two samples, 0 if not adaptive
+    private final LongAdder completedNodes; //!< nodes simulated
+    private final LongAdder waits; //!< times a worker found no ready node and blocked
+    private final LongAdder casFailures; //!< failed compare-and-set on the counters of the parents
+    private final AtomicLongArray busyTime; //!< nanoseconds spent simulating, per worker
+    private final AtomicLongArray idleTime; //!< nanoseconds spent waiting, per worker
+    private final AtomicLongArray busySince; //!< start of the current node of each worker, 0 if waiting
+    private final AtomicLongArray idleSince; //!< start of the current wait of each worker, 0 if busy
+    private volatile ObjectName mbeanName; //!< name of the registered MBean, if any
+    private volatile boolean continuation; //!< true if the last child runs its parent inline
+    private final LongAdder inlineParents; //!< parents run by their last child
+    private final Key[] startOrder; //!< keys in the order the nodes started
+    private final AtomicInteger startedNodes; //!< nodes started so far
+    private volatile Key[] replayOrder; //!< order to replay, <code>null</code> if not replaying
+    private final AtomicInteger nextTicket; //!< next position of the replayed order
+    private final Object replayMonitor; //!< monitor of the workers waiting for their node
+    @GuardedBy("replayMonitor") private final HashSet<Key> replayReady; //!< ready nodes while replaying
+
+    private static final Logger LOGGER = Logger.getLogger(RunSimulations.class.getName());
+    private static final double LOW_UTILISATION = 0.5; //!< below this the active workers are reduced
 
     /**
      * @brief Constructor
@@ -71,62 +192,589 @@ public class RunSimulations {
             = new ConcurrentHashMap<Key, Component>(size,
                                                     loadFactor,
                                                     this.concurrencyLevel);
+        this.pendingChildren
+            = new ConcurrentHashMap<Key, AtomicInteger>(size,
+                                                        loadFactor,
+                                                        this.concurrencyLevel);
+        this.readyQueue = new ConcurrentLinkedQueue<Component>();
+        this.readyNodes = new Semaphore(0);
+        this.remainingNodes = new AtomicInteger(size);
+        this.failure = new AtomicReference<RuntimeException>();
         this.latch = new CountDownLatch(threadsNumber);
+        this.busyWorkers = new AtomicInteger();
+        this.standby = new Object();
+        this.activeWorkers = threadsNumber;
+        this.completedNodes = new LongAdder();
+        this.waits = new LongAdder();
+        this.casFailures = new LongAdder();
+        this.busyTime = new AtomicLongArray(threadsNumber);
+        this.idleTime = new AtomicLongArray(threadsNumber);
+        this.busySince = new AtomicLongArray(threadsNumber);
+        this.idleSince = new AtomicLongArray(threadsNumber);
+        this.inlineParents = new LongAdder();
+        this.startOrder = new Key[size];
+        this.startedNodes = new AtomicInteger();
+        this.nextTicket = new AtomicInteger();
+        this.replayMonitor = new Object();
+        this.replayReady = new HashSet<Key>();
         this.tree.putAll(tree);
+        allocatePendingChildren();
     }
 
     /**
      * @brief Submit tasks to the executor
+     *
+     * @see Simulation#run()
+     *
+     * @description The leaves are pushed in the ready queue and then the
+     *              workers are submitted. The method returns when every node
+     *              has been simulated.
+     *
+     * @exception RuntimeException
+     *                the first exception thrown by the simulation of a node,
+     *                if any
      */
     public void run() throws InterruptedException {
+        for (Component comp : tree.values())
+            if (pendingChildren.get(comp.getConnections().getID()).get() == 0)
+                pushReady(comp);
+
+        if (remainingNodes.get() == 0) stopWorkers(); // nothing to simulate
+
         for (int i = 0; i < concurrencyLevel; i++)
-            executor.submit(new ParallelSimulations(latch));
+            executor.submit(new ParallelSimulations(i, latch));
+
+        ScheduledExecutorService controller = (samplingPeriod > 0) ? startController() : null;
+        try {
+            latch.await();
+        } finally {
+            if (controller != null) controller.shutdownNow();
+        }
 
-        latch.await();
+        if (failure.get() != null) throw failure.get();
     }
 
     /**
-     * @brief Run simulations
+     * @brief Enable the adaptive number of active workers
      *
-     * @description 
+     * @description Must be called before <code>run()</code>. The active
+     *              workers start from the minimum between the threads and the
+     *              available cores.
+     *
+     * @param[in] period The time between two samples
+     * @param[in] unit The unit of the period
      */
-    private Component runSim() {
+    public void enableAdaptiveWorkers(final long period, final TimeUnit unit) {
+        if (period <= 0) throw new IllegalArgumentException("The sampling period must be positive.");
 
-        Component tmpComp = null;
-        synchronized(this) {
-            Iterator<Key> iterator = tree.keySet().iterator();
-            while(iterator.hasNext()) {
-                Key next = iterator.next();
-                tmpComp = tree.get(next);
-                if (tmpComp.isReadyForSimulation()) {
-                    boolean test = tree.remove(next, tmpComp);
-                    if (test) {
-                        return tmpComp;
-                    } else {
-                        System.out.println("ERROR!!! Running deleted component!");
-                        System.exit(1);
-                    }
+        this.activeWorkers = maxActiveWorkers();
+        this.samplingPeriod = unit.toNanos(period);
+    }
+
+    /**
+     * @return The number of workers currently allowed to simulate nodes
+     */
+    public int getActiveWorkers() {
+        return activeWorkers;
+    }
+
+    /**
+     * @brief Enable the continuation policy
+     *
+     * @description Must be called before <code>run()</code>. It is ignored
+     *              while replaying an order, which fixes the thread-free
+     *              order of the nodes.
+     */
+    public void enableContinuation() {
+        this.continuation = true;
+    }
+
+    /**
+     * @return The number of parents run inline by their last child
+     */
+    public long getInlineParents() {
+        return inlineParents.sum();
+    }
+
+    /**
+     * @brief Replay an execution order
+     *
+     * @description Must be called before <code>run()</code>. The nodes are
+     *              handed out to the workers in the given order. Only with a
+     *              single thread this is also the order in which they start,
+     *              and the whole execution is reproduced; with more threads
+     *              two workers can start their nodes in the opposite order of
+     *              their positions.
+     *
+     * @param[in] order The keys of all the nodes, each child before its
+     *            parent, e.g. from <code>getExecutionOrder()</code>
+     * @exception IllegalArgumentException
+     *                if the order is not a valid execution order of the tree
+     */
+    public void replay(final List<Key> order) {
+        if (order.size() != tree.size())
+            throw new IllegalArgumentException("The order has " + order.size() + " nodes, the tree " + tree.size());
+
+        HashMap<Key, Integer> positions = new HashMap<Key, Integer>();
+        for (int i = 0; i < order.size(); i++)
+            if (!tree.containsKey(order.get(i)) || positions.put(order.get(i), i) != null)
+                throw new IllegalArgumentException("Key " + order.get(i).getString() + " unknown or repeated");
+
+        for (Component comp : tree.values())
+            for (Key child : comp.getConnections().getChildren())
+                if (positions.containsKey(child) && positions.get(child) > positions.get(comp.getConnections().getID()))
+                    throw new IllegalArgumentException("Key " + child.getString() + " after its parent");
+
+        replayOrder = order.toArray(new Key[order.size()]);
+    }
+
+    /**
+     * @brief Replay the order generated from a seed
+     *
+     * @param[in] seed The seed of the order
+     * @see RunSimulations#seededOrder(Map, long)
+     */
+    public void replaySeeded(final long seed) {
+        replay(seededOrder(tree, seed));
+    }
+
+    /**
+     * @return The keys in the order the nodes started, so far
+     */
+    public List<Key> getExecutionOrder() {
+        List<Key> order = new ArrayList<Key>();
+        for (Key key : startOrder) {
+            if (key == null) break;
+            order.add(key);
+        }
+
+        return order;
+    }
+
+    /**
+     * @brief Write the execution order, a hexadecimal key per line
+     *
+     * @param[in] filePath The path of the file
+     * @throws IOException
+     */
+    public void writeExecutionOrder(final String filePath) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (Key key : getExecutionOrder()) lines.add(key.getString());
+
+        Files.write(Paths.get(filePath), lines, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @brief Read an execution order written by
+     *        <code>writeExecutionOrder</code>
+     *
+     * @param[in] filePath The path of the file
+     * @return The keys in the recorded order
+     * @throws IOException
+     */
+    public static List<Key> readExecutionOrder(final String filePath) throws IOException {
+        List<Key> order = new ArrayList<Key>();
+        for (String line : Files.readAllLines(Paths.get(filePath), StandardCharsets.US_ASCII))
+            if (!line.isEmpty()) order.add(new Key(line));
+
+        return order;
+    }
+
+    /**
+     * @brief A deterministic execution order from a seed
+     *
+     * @description The leaves are sorted by key, then each step picks a
+     *              random node among the ready ones: the same seed always
+     *              gives the same order, different seeds explore different
+     *              valid orders.
+     *
+     * @param[in] tree The tree structure
+     * @param[in] seed The seed of the order
+     * @return The keys of all the nodes, each child before its parent
+     */
+    public static List<Key> seededOrder(final Map<Key, Component> tree, final long seed) {
+        HashMap<Key, Integer> pending = new HashMap<Key, Integer>();
+        List<Key> ready = new ArrayList<Key>();
+        for (Component comp : tree.values()) {
+            int children = childrenOf(tree, comp);
+            pending.put(comp.getConnections().getID(), children);
+            if (children == 0) ready.add(comp.getConnections().getID());
+        }
+
+        Collections.sort(ready, new Comparator<Key>() {
+                public int compare(final Key a, final Key b) {
+                    return a.getDouble().compareTo(b.getDouble());
+                }
+            });
+
+        Random random = new Random(seed);
+        List<Key> order = new ArrayList<Key>();
+        while (!ready.isEmpty()) {
+            int pick = random.nextInt(ready.size());
+            Key key = ready.get(pick);
+            ready.set(pick, ready.get(ready.size() - 1));
+            ready.remove(ready.size() - 1);
+            order.add(key);
+
+            Key parent = tree.get(key).getConnections().getPARENT();
+            if (pending.containsKey(parent)) {
+                int children = pending.get(parent) - 1;
+                pending.put(parent, children);
+                if (children == 0) ready.add(parent);
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * @brief Snapshot of the scheduler metrics
+     *
+     * @description It can be called at any time, also while the simulation
+     *              is running.
+     *
+     * @return The current metrics
+     */
+    public SchedulerMetrics getMetrics() {
+        long[] busy = new long[concurrencyLevel];
+        long[] idle = new long[concurrencyLevel];
+        final long now = System.nanoTime();
+        for (int w = 0; w < concurrencyLevel; w++) {
+            final long busyStart = busySince.get(w);
+            final long idleStart = idleSince.get(w);
+            busy[w] = busyTime.get(w) + ((busyStart != 0) ? now - busyStart : 0); // node in progress
+            idle[w] = idleTime.get(w) + ((idleStart != 0) ? now - idleStart : 0); // wait in progress
+        }
+
+        return new SchedulerMetrics(tree.size(), completedNodes.sum(), busyWorkers.get(), getReadyNodes(), waits.sum(), casFailures.sum(), busy, idle);
+    }
+
+    /**
+     * @return The number of nodes simulated so far
+     */
+    public long getCompletedNodes() {
+        return completedNodes.sum();
+    }
+
+    /**
+     * @return The number of nodes waiting in the ready queue
+     */
+    public int getReadyNodes() {
+        return completed ? 0 : readyNodes.availablePermits();
+    }
+
+    /**
+     * @return The number of nodes still waiting for some children
+     */
+    public long getBlockedNodes() {
+        return getMetrics().getBlockedNodes();
+    }
+
+    /**
+     * @return The fraction of the time the workers have been simulating
+     */
+    public double getUtilisation() {
+        return getMetrics().getUtilisation();
+    }
+
+    /**
+     * @brief Register this simulation in the platform MBean server
+     *
+     * @return The name of the MBean
+     */
+    public synchronized ObjectName registerMBean() {
+        if (mbeanName != null) return mbeanName;
+
+        try {
+            ObjectName name = new ObjectName(getClass().getPackage().getName() + ":type=" + getClass().getSimpleName()
+                                             + ",id=" + Integer.toHexString(System.identityHashCode(this)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            mbeanName = name;
+        } catch (JMException exception) {
+            throw new IllegalStateException("Cannot register the MBean", exception);
+        }
+
+        return mbeanName;
+    }
+
+    /**
+     * @brief Remove this simulation from the platform MBean server
+     */
+    public synchronized void unregisterMBean() {
+        if (mbeanName == null) return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            mbeanName = null;
+        } catch (JMException exception) {
+            throw new IllegalStateException("Cannot unregister the MBean", exception);
+        }
+    }
+
+    /**
+     * @return The maximum number of active workers: the cores, if fewer than
+     *         the threads
+     */
+    private int maxActiveWorkers() {
+        return Math.min(concurrencyLevel, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @brief Start the thread sampling the workers
+     *
+     * @return The scheduler of the samples
+     */
+    private ScheduledExecutorService startController() {
+        ScheduledExecutorService controller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "workers-controller");
+                    thread.setDaemon(true);
+                    return thread;
                 }
+            });
+
+        controller.scheduleAtFixedRate(new Runnable() {
+                public void run() { adaptWorkers(); }
+            }, samplingPeriod, samplingPeriod, TimeUnit.NANOSECONDS);
+
+        return controller;
+    }
+
+    /**
+     * @brief Resize the set of active workers from a sample
+     *
+     * @description Nodes waiting in the ready queue mean too few active
+     *              workers: they grow to cover the queue, up to the cores.
+     *              An empty queue with a low utilisation means idle workers:
+     *              they shrink to the busy ones.
+     */
+    private void adaptWorkers() {
+        if (completed) return;
+
+        final int depth = readyNodes.availablePermits();
+        final int busy = busyWorkers.get();
+        final int active = activeWorkers;
+        final double utilisation = (double) busy / active;
+
+        int target = active;
+        if (depth > 0 && active < maxActiveWorkers())
+            target = Math.min(maxActiveWorkers(), Math.max(active + 1, busy + depth));
+        else if (depth == 0 && utilisation < LOW_UTILISATION)
+            target = Math.max(1, busy);
+
+        if (target == active) return;
+
+        LOGGER.info("active workers " + active + " -> " + target + " (ready queue = " + depth
+                    + ", busy = " + busy + ", utilisation = " + String.format("%.2f", utilisation)
+                    + ", remaining nodes = " + remainingNodes.get() + ")");
+
+        setActiveWorkers(target);
+    }
+
+    /**
+     * @brief Change the number of active workers
+     *
+     * @description The workers above the new limit stop taking nodes: a busy
+     *              worker after its node, a worker parked on the ready queue
+     *              as soon as it is woken up.
+     *
+     * @param[in] target The new number of active workers
+     */
+    void setActiveWorkers(final int target) {
+        if (target <= 0 || target > concurrencyLevel)
+            throw new IllegalArgumentException("The active workers must be between 1 and " + concurrencyLevel);
+
+        synchronized (standby) {
+            activeWorkers = target;
+            standby.notifyAll();
+        }
+    }
+
+    /**
+     * @brief Allocate the counter of the children of each node
+     */
+    private void allocatePendingChildren() {
+        for (Component comp : tree.values())
+            pendingChildren.put(comp.getConnections().getID(),
+                                new AtomicInteger(childrenOf(tree, comp)));
+    }
+
+    /**
+     * @brief Push a node in the ready queue and wake up an idle worker
+     *
+     * @param[in] comp The node whose children have been all simulated
+     */
+    private void pushReady(final Component comp) {
+        if (replayOrder == null) {
+            readyQueue.offer(comp);
+            readyNodes.release();
+            return;
+        }
+
+        readyNodes.release(); // keeps the ready count of the metrics
+        synchronized (replayMonitor) {
+            replayReady.add(comp.getConnections().getID());
+            replayMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * @brief Take the next node of the replayed order
+     *
+     * @description Waits until the node is ready. Since each child comes
+     *              before its parent, the earliest node not simulated yet is
+     *              always ready, so the workers never deadlock.
+     *
+     * @return The node, <code>null</code> if the order is finished or the
+     *         simulation has been stopped
+     * @throws InterruptedException
+     */
+    private Component nextInOrder() throws InterruptedException {
+        final Key[] order = replayOrder;
+        final int ticket = nextTicket.getAndIncrement();
+        if (ticket >= order.length) return null;
+
+        synchronized (replayMonitor) {
+            if (!replayReady.contains(order[ticket])) waits.increment();
+            while (!replayReady.contains(order[ticket]) && !completed) replayMonitor.wait();
+        }
+
+        if (completed) return null;
+        readyNodes.acquire(); // released by pushReady before the node became ready
+        return tree.get(order[ticket]);
+    }
+
+    /**
+     * @brief Run the simulation of a node and release its parent
+     *
+     * @description The counter of the parent is decremented once the
+     *              simulation of the node is finished. The thread that brings
+     *              it to 0 is the only one that releases the parent: it pushes
+     *              the parent in the ready queue or, with the continuation
+     *              policy, it returns the parent to run it next.
+     *
+     * @param[in] comp The node to simulate
+     * @return The parent to run inline, <code>null</code> if none
+     */
+    private Component runSim(final Component comp) {
+
+        Key parentKey = comp.getConnections().getPARENT();
+        Component parent = tree.get(parentKey);
+        startOrder[startedNodes.getAndIncrement()] = comp.getConnections().getID();
+
+        try {
+            simulate(comp, parent);
+        } catch (RuntimeException exception) {
+            failure.compareAndSet(null, exception);
+            stopWorkers();
+            return null;
+        }
+
+        completedNodes.increment();
+        Component next = null;
+        if (parent != null && releaseChild(pendingChildren.get(parentKey)) == 0) {
+            if (continuation && replayOrder == null) {
+                inlineParents.increment();
+                next = parent;
+            } else {
+                pushReady(parent);
             }
         }
-        return null;
+
+        if (remainingNodes.decrementAndGet() == 0) stopWorkers();
+
+        return next;
+
+    }
+
+    /**
+     * @brief Decrement the counter of the children of a parent
+     *
+     * @description The compare-and-set loop of <tt>decrementAndGet</tt> is
+     *              written out in order to count its failures.
+     *
+     * @param[in] counter The counter of the parent
+     * @return The children of the parent still to simulate
+     */
+    private int releaseChild(final AtomicInteger counter) {
+        while (true) {
+            final int children = counter.get();
+            if (counter.compareAndSet(children, children - 1)) return children - 1;
+            casFailures.increment(); // a sibling completed at the same time
+        }
+    }
+
+    /**
+     * @brief Wake up all the parked workers in order to let them terminate
+     */
+    private void stopWorkers() {
+        completed = true;
+        readyNodes.release(concurrencyLevel);
+        synchronized (standby) {
+            standby.notifyAll();
+        }
+        synchronized (replayMonitor) {
+            replayMonitor.notifyAll();
+        }
     }
 
     private class ParallelSimulations implements Runnable {
 
+        private final int worker;
         private final CountDownLatch latch;
 
-        ParallelSimulations(CountDownLatch latch) { this.latch = latch; }
+        ParallelSimulations(int worker, CountDownLatch latch) {
+            this.worker = worker;
+            this.latch = latch;
+        }
 
         public void run() {
-            while(!tree.isEmpty()) {
-                Component comp = runSim();
-                if (comp != null) {
-                    Component parent = tree.get(comp.getConnections().getPARENT());
-                    comp.runSimulation(parent);
+            try {
+                while(true) {
+                    final long idleStart = System.nanoTime();
+                    idleSince.set(worker, idleStart);
+                    if (worker >= activeWorkers) {
+                        synchronized (standby) {
+                            while (worker >= activeWorkers && !completed) standby.wait();
+                        }
+                    }
+
+                    Component comp;
+                    if (replayOrder != null) {
+                        comp = nextInOrder();
+                    } else {
+                        if (!readyNodes.tryAcquire()) {
+                            waits.increment();
+                            readyNodes.acquire(); // parked until a node is ready
+                        }
+                        if (worker >= activeWorkers && !completed) { // deactivated while parked
+                            readyNodes.release(); // the node goes to an active worker
+                            idleTime.addAndGet(worker, System.nanoTime() - idleStart);
+                            continue;
+                        }
+                        comp = completed ? null : readyQueue.poll();
+                    }
+                    final long busyStart = System.nanoTime();
+                    idleTime.addAndGet(worker, busyStart - idleStart);
+                    idleSince.set(worker, 0);
+                    if (comp == null) break;
+
+                    busyWorkers.incrementAndGet();
+                    busySince.set(worker, busyStart);
+                    try {
+                        Component next = comp;
+                        while (next != null) next = runSim(next); // continuation up the tree
+                    } finally {
+                        busyTime.addAndGet(worker, System.nanoTime() - busyStart);
+                        busySince.set(worker, 0);
+                        busyWorkers.decrementAndGet();
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                latch.countDown();
             }
-            latch.countDown();
         }
 
     }
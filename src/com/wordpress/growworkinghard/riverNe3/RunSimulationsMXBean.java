@@ -0,0 +1,50 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+/**
+ * @brief Management interface of RunSimulations
+ *
+ * @description Registered with <code>RunSimulations.registerMBean()</code>,
+ *              it lets JConsole or any JMX client follow a run while it is in
+ *              progress.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public interface RunSimulationsMXBean {
+
+    /**
+     * @return A snapshot of all the metrics
+     */
+    public SchedulerMetrics getMetrics();
+
+    public long getCompletedNodes();
+
+    public int getReadyNodes();
+
+    public long getBlockedNodes();
+
+    public double getUtilisation();
+
+    public int getActiveWorkers();
+
+}
@@ -0,0 +1,194 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.GhostNode;
+import com.wordpress.growworkinghard.riverNe3.composite.Leaf;
+import com.wordpress.growworkinghard.riverNe3.composite.Node;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Basin;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.GhostBasin;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.River;
+import com.wordpress.growworkinghard.riverNe3.composite.key.BinaryConnections;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+/**
+ * @brief Trees shared by the tests of the simulations
+ *
+ * @description When an ExecutionOrder is given, the simulation of each node
+ *              is recorded by it, instead of printing and sleeping, so that
+ *              the tests drive the strategies through the real
+ *              <code>runSimulation</code> of the nodes.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+final class SampleTrees {
+
+    private static final int MAX_LAYER = 31; //!< deepest layer of the random trees, whose keys stay below 2^31
+    private static final Coordinate2D POINT = new Coordinate2D(0.0, 0.0); //!< coordinates of all the basins
+
+    private SampleTrees() {}
+
+    /**
+     * @brief Build a complete binary tree
+     *
+     * @param[in] layers The number of layers of the tree
+     * @return The tree structure
+     */
+    static HashMap<Key, Component> completeBinaryTree(final int layers) {
+        return completeBinaryTree(layers, null);
+    }
+
+    /**
+     * @brief Build a complete binary tree whose nodes are recorded
+     *
+     * @param[in] layers The number of layers of the tree
+     * @param[in] order The recorder of the simulations, <code>null</code> to
+     *            keep the simulation of the nodes
+     * @return The tree structure
+     */
+    static HashMap<Key, Component> completeBinaryTree(final int layers, final ExecutionOrder order) {
+
+        HashMap<Key, Component> tree = new HashMap<Key, Component>();
+
+        for (int layer = 1; layer <= layers; layer++) {
+            for (int id = 1 << (layer - 1); id < 1 << layer; id++) {
+                Key key = new Key(id);
+                tree.put(key, (layer == layers) ? newLeaf(key, layer, order) : newNode(key, layer, false, order));
+            }
+        }
+
+        return tree;
+
+    }
+
+    /**
+     * @brief Build an unbalanced tree, as the one of a river network
+     *
+     * @description The tree grows from the outlet splitting a leaf at a time:
+     *              half of the times the leaf just created, which gives long
+     *              branches, otherwise a random one. A leaf is split in two
+     *              tributaries or continued by a single reach, and one
+     *              junction of two tributaries out of four is a ghost node, as
+     *              where more than two lines flow into the same point.
+     *
+     * @param[in] splits The number of leaves to split
+     * @param[in] seed The seed of the shape of the tree
+     * @return The tree structure
+     */
+    static HashMap<Key, Component> riverTree(final int splits, final long seed) {
+        return riverTree(splits, seed, null);
+    }
+
+    /**
+     * @brief Build an unbalanced tree whose nodes are recorded
+     *
+     * @param[in] splits The number of leaves to split
+     * @param[in] seed The seed of the shape of the tree
+     * @param[in] order The recorder of the simulations, <code>null</code> to
+     *            keep the simulation of the nodes
+     * @return The tree structure
+     * @see SampleTrees#riverTree(int, long)
+     */
+    static HashMap<Key, Component> riverTree(final int splits, final long seed, final ExecutionOrder order) {
+
+        Random random = new Random(seed);
+        HashMap<Long, Integer> layers = new HashMap<Long, Integer>(); // layer of each node
+        HashMap<Long, Boolean> ghosts = new HashMap<Long, Boolean>(); // internal nodes
+        List<Long> leaves = new ArrayList<Long>();
+
+        layers.put(1L, 1);
+        leaves.add(1L);
+
+        for (int s = 0; s < splits; s++) {
+            int pick = random.nextBoolean() ? leaves.size() - 1 : random.nextInt(leaves.size());
+            long id = leaves.get(pick);
+            int layer = layers.get(id);
+            if (layer >= MAX_LAYER) continue;
+
+            leaves.remove(pick);
+            boolean tributaries = random.nextInt(3) > 0;
+            ghosts.put(id, tributaries && random.nextInt(4) == 0);
+
+            long[] children = tributaries ? new long[] {2 * id + 1, 2 * id} : new long[] {2 * id};
+            for (long child : children) {
+                layers.put(child, layer + 1);
+                leaves.add(child);
+            }
+        }
+
+        HashMap<Key, Component> tree = new HashMap<Key, Component>();
+        for (Long id : layers.keySet()) {
+            Key key = new Key((double) id);
+            int layer = layers.get(id);
+            tree.put(key, ghosts.containsKey(id) ? newNode(key, layer, ghosts.get(id), order) : newLeaf(key, layer, order));
+        }
+
+        return tree;
+
+    }
+
+    private static Component newLeaf(final Key key, final int layer, final ExecutionOrder order) {
+        BinaryConnections connections = new BinaryConnections(key, null, null);
+        Basin basin = new Basin(new River(POINT, POINT), null);
+        if (order == null) return new Leaf(connections, layer, basin);
+
+        return new Leaf(connections, layer, basin) {
+                @Override
+                public synchronized void runSimulation(final Component parent) {
+                    order.record(this);
+                }
+            };
+    }
+
+    private static Component newNode(final Key key, final int layer, final boolean ghost, final ExecutionOrder order) {
+        BinaryConnections connections = new BinaryConnections(key);
+        if (ghost) {
+            GhostBasin basin = new GhostBasin(POINT, POINT);
+            if (order == null) return new GhostNode(connections, layer, basin);
+
+            return new GhostNode(connections, layer, basin) {
+                    @Override
+                    public synchronized void runSimulation(final Component parent) {
+                        order.record(this);
+                    }
+                };
+        }
+
+        Basin basin = new Basin(new River(POINT, POINT), null);
+        if (order == null) return new Node(connections, layer, basin);
+
+        return new Node(connections, layer, basin) {
+                @Override
+                public synchronized void runSimulation(final Component parent) {
+                    order.record(this);
+                }
+            };
+    }
+
+}
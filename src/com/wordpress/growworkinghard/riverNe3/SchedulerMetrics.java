@@ -0,0 +1,160 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * @brief Snapshot of the scheduler metrics of RunSimulations
+ *
+ * @description The counters are read one by one while the simulation is
+ *              running, so the snapshot is not atomic: the sum of completed,
+ *              running, ready and blocked nodes can differ from the total by
+ *              the few nodes moving while it is taken.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@Immutable
+public final class SchedulerMetrics {
+
+    private final int totalNodes; //!< nodes of the tree
+    private final long completedNodes; //!< nodes simulated
+    private final int runningNodes; //!< nodes being simulated
+    private final int readyNodes; //!< nodes waiting in the ready queue
+    private final long waits; //!< times a worker found no ready node and blocked
+    private final long casFailures; //!< failed compare-and-set on the counters of the parents
+    private final long[] busyTime; //!< nanoseconds spent simulating, per worker
+    private final long[] idleTime; //!< nanoseconds spent waiting, per worker
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] totalNodes The nodes of the tree
+     * @param[in] completedNodes The nodes simulated
+     * @param[in] runningNodes The nodes being simulated
+     * @param[in] readyNodes The nodes waiting in the ready queue
+     * @param[in] waits The times a worker found no ready node and blocked
+     * @param[in] casFailures The failed compare-and-set on the counters of
+     *            the parents
+     * @param[in] busyTime The nanoseconds spent simulating, per worker
+     * @param[in] idleTime The nanoseconds spent waiting, per worker
+     */
+    public SchedulerMetrics(final int totalNodes, final long completedNodes, final int runningNodes, final int readyNodes, final long waits, final long casFailures, final long[] busyTime, final long[] idleTime) {
+        this.totalNodes = totalNodes;
+        this.completedNodes = completedNodes;
+        this.runningNodes = runningNodes;
+        this.readyNodes = readyNodes;
+        this.waits = waits;
+        this.casFailures = casFailures;
+        this.busyTime = Arrays.copyOf(busyTime, busyTime.length);
+        this.idleTime = Arrays.copyOf(idleTime, idleTime.length);
+    }
+
+    public int getTotalNodes() {
+        return totalNodes;
+    }
+
+    public long getCompletedNodes() {
+        return completedNodes;
+    }
+
+    public int getRunningNodes() {
+        return runningNodes;
+    }
+
+    public int getReadyNodes() {
+        return readyNodes;
+    }
+
+    /**
+     * @return The nodes still waiting for some children
+     */
+    public long getBlockedNodes() {
+        return Math.max(0, totalNodes - completedNodes - runningNodes - readyNodes);
+    }
+
+    /**
+     * @brief Times a worker found no ready node and blocked
+     *
+     * @description A wait is not a contention: the worker is blocked because
+     *              there is no work, either an empty ready queue or, while
+     *              replaying, its node not ready yet.
+     *
+     * @return The number of waits
+     */
+    public long getWaits() {
+        return waits;
+    }
+
+    /**
+     * @brief Contention on the counters of the parents
+     *
+     * @return The failed compare-and-set, one per retry
+     */
+    public long getCasFailures() {
+        return casFailures;
+    }
+
+    public long[] getBusyTime() {
+        return Arrays.copyOf(busyTime, busyTime.length);
+    }
+
+    public long[] getIdleTime() {
+        return Arrays.copyOf(idleTime, idleTime.length);
+    }
+
+    /**
+     * @return The fraction of the time the workers have been simulating
+     */
+    public double getUtilisation() {
+        long busy = 0;
+        long total = 0;
+        for (int w = 0; w < busyTime.length; w++) {
+            busy += busyTime[w];
+            total += busyTime[w] + idleTime[w];
+        }
+
+        return (total > 0) ? (double) busy / total : 0.0;
+    }
+
+    /**
+     * @brief Simply overriding of the <code>toString</code> method
+     *
+     * @return The metrics in a single line
+     */
+    @Override
+    public String toString() {
+        String tmp = this.getClass().getSimpleName();
+        tmp += " ==> completed = " + completedNodes + "/" + totalNodes;
+        tmp += " - running = " + runningNodes;
+        tmp += " - ready = " + readyNodes;
+        tmp += " - blocked = " + getBlockedNodes();
+        tmp += " - waits = " + waits;
+        tmp += " - CAS failures = " + casFailures;
+        tmp += " - utilisation = " + String.format("%.2f", getUtilisation());
+
+        return tmp;
+    }
+
+}
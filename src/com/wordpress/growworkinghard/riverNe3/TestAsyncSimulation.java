@@ -0,0 +1,165 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.LocalNode;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Hydrometer;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.AsyncSimulation;
+
+/**
+ * @brief Test of the simulation as a graph of futures
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestAsyncSimulation {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int SPLITS = 300; //!< splits of the river tree
+
+    @Test
+    public void testChildrenBeforeParent() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        ExecutionOrder complete = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, complete);
+        AsyncSimulation sim = new AsyncSimulation(tree, executor);
+        CompletableFuture<Void> outlet = sim.start();
+        sim.getFuture(new Key(2.0)).join(); // a sub-basin, without waiting for the outlet
+        assertEquals(Math.sqrt(2.0) + 0.5 * (complete.getResults().get(new Key(4.0)) + complete.getResults().get(new Key(5.0))),
+                     complete.getResults().get(new Key(2.0)), 0.0);
+        outlet.join();
+        complete.assertPostOrder(tree);
+
+        ExecutionOrder river = new ExecutionOrder();
+        HashMap<Key, Component> riverTree = SampleTrees.riverTree(SPLITS, 29L, river);
+        new AsyncSimulation(riverTree, executor).run();
+        river.assertPostOrder(riverTree);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testLocalNodeFutures() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final ExecutionOrder order = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, order);
+        Coordinate2D point = new Coordinate2D(0.0, 0.0);
+
+        Key[] hydrometers = {new Key(3.0), new Key(9.0)};
+        for (Key key : hydrometers) {
+            Component comp = tree.get(key);
+            tree.put(key, new LocalNode(comp.getConnections(), comp.getLayer(), new Hydrometer(point)) {
+                    @Override
+                    public synchronized void runSimulation(final Component parent) {
+                        order.record(this);
+                    }
+                });
+        }
+
+        AsyncSimulation sim = new AsyncSimulation(tree, executor);
+        CompletableFuture<Void> outlet = sim.start();
+        Map<Key, CompletableFuture<Void>> locals = sim.getLocalNodeFutures();
+        assertEquals(hydrometers.length, locals.size());
+
+        for (Key key : hydrometers) {
+            locals.get(key).join(); // the sub-basin of the hydrometer is finished
+            for (Key child : tree.get(key).getConnections().getChildren())
+                assertTrue(order.getResults().containsKey(child));
+            assertTrue(order.getResults().containsKey(key));
+        }
+
+        locals.get(hydrometers[0]).complete(null); // read-only: the graph is not affected
+        outlet.join();
+        order.assertPostOrder(tree);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testFailureOfANode() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final ExecutionOrder order = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, order);
+        final Key failing = new Key(9.0);
+        final IllegalStateException failure = new IllegalStateException("Simulation of node 9 failed");
+
+        AsyncSimulation sim = new AsyncSimulation(tree, executor) {
+                @Override
+                protected void simulate(final Component comp, final Component parent) {
+                    if (comp.getConnections().getID().equals(failing)) throw failure;
+                    super.simulate(comp, parent);
+                }
+            };
+
+        try {
+            sim.run();
+            fail("The failure of a node has not been thrown");
+        } catch (IllegalStateException exception) {
+            assertSame(failure, exception);
+        }
+
+        // the failing node and its ancestors fail, their sibling sub-trees end
+        for (Key key : new Key[] {failing, new Key(4.0), new Key(2.0), new Key(1.0)}) {
+            assertFailed(sim.getFuture(key), failure);
+            assertFalse(order.getResults().containsKey(key));
+        }
+        for (Key key : new Key[] {new Key(8.0), new Key(5.0), new Key(3.0)}) {
+            sim.getFuture(key).join();
+            assertTrue(order.getResults().containsKey(key));
+        }
+
+        executor.shutdown();
+
+    }
+
+    private static void assertFailed(final CompletableFuture<Void> future, final Throwable cause) {
+        try {
+            future.join();
+            fail("The future of a failed node completed normally");
+        } catch (CompletionException exception) {
+            assertSame(cause, exception.getCause());
+        }
+    }
+
+}
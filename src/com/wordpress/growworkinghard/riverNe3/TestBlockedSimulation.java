@@ -0,0 +1,254 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.BlockedSimulation;
+import com.wordpress.growworkinghard.riverNe3.simulation.Checkpoint;
+import com.wordpress.growworkinghard.riverNe3.simulation.NodeTypeKernel;
+import com.wordpress.growworkinghard.riverNe3.simulation.SimulationKernel;
+import com.wordpress.growworkinghard.riverNe3.simulation.StatefulKernel;
+import com.wordpress.growworkinghard.riverNe3.simulation.Tracer;
+
+/**
+ * @brief Test of the simulation in blocks of time-steps
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestBlockedSimulation {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int TIME_STEPS = 100; //!< time-steps of the simulation
+
+    /**
+     * @brief Each node adds the time-step to the sum of its children
+     */
+    static final SimulationKernel ACCUMULATION = new SimulationKernel() {
+            public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+                for (int k = 0; k < steps; k++) {
+                    double value = firstStep + k;
+                    for (double[] input : inputs) value += input[k];
+                    output[k] = value;
+                }
+            }
+        };
+
+    @Test
+    public void testBlockSizeDoesNotChangeResults() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        Key root = new Key(1.0);
+
+        for (int blockSize : new int[] {1, 7, TIME_STEPS}) {
+            BlockedSimulation sim = new BlockedSimulation(tree, executor, ACCUMULATION, TIME_STEPS, blockSize);
+            sim.run();
+
+            double[] lastBlock = sim.getOutput(root);
+            int firstStep = (sim.getBlocksCount() - 1) * blockSize;
+            assertEquals(TIME_STEPS - firstStep, lastBlock.length);
+            for (int k = 0; k < lastBlock.length; k++) // the root sums the steps of every node
+                assertEquals(tree.size() * (double) (firstStep + k), lastBlock[k], 0.0);
+        }
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testKernelBoundToNodeType() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        SimulationKernel unitRunoff = new SimulationKernel() {
+                public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+                    for (int k = 0; k < steps; k++) output[k] = 1.0;
+                }
+            };
+
+        BlockedSimulation sim = new BlockedSimulation(tree, executor, new NodeTypeKernel(unitRunoff, NodeTypeKernel.PASS_THROUGH), TIME_STEPS, 10);
+        sim.run();
+
+        for (double value : sim.getOutput(new Key(1.0))) // only the leaves produce runoff
+            assertEquals(1 << (LAYERS - 1), value, 0.0);
+
+        executor.shutdown();
+
+    }
+
+    /**
+     * @brief Each node is a linear reservoir releasing half of its storage
+     */
+    static class Reservoir implements StatefulKernel {
+
+        private final ConcurrentHashMap<Key, double[]> storage = new ConcurrentHashMap<Key, double[]>();
+
+        public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+            double[] state = storage.get(node.getConnections().getID());
+            if (state == null) storage.put(node.getConnections().getID(), state = new double[1]);
+
+            for (int k = 0; k < steps; k++) {
+                double inflow = 1.0;
+                for (double[] input : inputs) inflow += input[k];
+                output[k] = 0.5 * state[0];
+                state[0] += inflow - output[k];
+            }
+        }
+
+        public double[] saveState(final Component node) {
+            return storage.get(node.getConnections().getID()).clone();
+        }
+
+        public void restoreState(final Component node, final double[] state) {
+            storage.put(node.getConnections().getID(), state.clone());
+        }
+
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws InterruptedException, IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        Key root = new Key(1.0);
+        File file = File.createTempFile("riverNe3", ".checkpoint");
+        file.deleteOnExit();
+
+        BlockedSimulation complete = new BlockedSimulation(tree, executor, new Reservoir(), TIME_STEPS, 5);
+        complete.enableCheckpoints(file.getPath(), 3);
+        complete.run();
+        assertEquals(18, complete.getLastCheckpoint()); // last multiple of 3 before the 20 blocks
+
+        BlockedSimulation resumed = new BlockedSimulation(tree, executor, new Reservoir(), TIME_STEPS, 5);
+        assertEquals(18, resumed.resume(file.getPath()));
+        resumed.run();
+        assertArrayEquals(complete.getOutput(root), resumed.getOutput(root), 0.0);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testCheckpointsOfAResumedSimulation() throws InterruptedException, IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        Key root = new Key(1.0);
+        File file = File.createTempFile("riverNe3", ".checkpoint");
+        file.deleteOnExit();
+
+        BlockedSimulation complete = new BlockedSimulation(tree, executor, new Reservoir(), TIME_STEPS, 5);
+        complete.run();
+
+        // each simulation writes its checkpoints with its own writer
+        BlockedSimulation first = new BlockedSimulation(tree, executor, new Reservoir(), TIME_STEPS, 5);
+        first.enableCheckpoints(file.getPath(), 10);
+        first.run();
+        assertEquals(10, first.getLastCheckpoint());
+
+        BlockedSimulation second = new BlockedSimulation(tree, executor, new Reservoir(), TIME_STEPS, 5);
+        assertEquals(10, second.resume(file.getPath()));
+        second.enableCheckpoints(file.getPath(), 5);
+        second.run();
+        assertEquals(15, second.getLastCheckpoint());
+
+        BlockedSimulation third = new BlockedSimulation(tree, executor, new Reservoir(), TIME_STEPS, 5);
+        assertEquals(15, third.resume(file.getPath()));
+        third.run();
+        assertArrayEquals(complete.getOutput(root), third.getOutput(root), 0.0);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testTruncatedCheckpoint() throws InterruptedException, IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(3);
+        File file = File.createTempFile("riverNe3", ".checkpoint");
+        file.deleteOnExit();
+
+        BlockedSimulation sim = new BlockedSimulation(tree, executor, new Reservoir(), TIME_STEPS, 5);
+        sim.enableCheckpoints(file.getPath(), 3);
+        sim.run();
+        executor.shutdown();
+
+        final long length = file.length();
+        assertEquals(tree.size(), Checkpoint.read(file.getPath()).size());
+
+        for (long size = length - 1; size >= 0; size--) {
+            try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+                truncated.setLength(size);
+            }
+            try {
+                Checkpoint.read(file.getPath());
+                fail("Checkpoint of " + size + " bytes out of " + length + " read");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+    }
+
+    @Test
+    public void testTraceOfEachBlock() throws InterruptedException, IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        File file = File.createTempFile("riverNe3", ".json");
+        file.deleteOnExit();
+
+        BlockedSimulation sim = new BlockedSimulation(tree, executor, ACCUMULATION, TIME_STEPS, 10);
+        Tracer tracer = new Tracer(1024);
+        sim.setTracer(tracer);
+        sim.run();
+
+        assertEquals(tree.size() * sim.getBlocksCount(), tracer.getEventsCount());
+        assertEquals(0, tracer.getDroppedEvents());
+
+        tracer.writeChromeTrace(file.getPath());
+        String trace = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(trace.startsWith("{\"traceEvents\":["));
+        assertTrue(trace.contains("\"cat\":\"Leaf\""));
+
+        executor.shutdown();
+
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.ClusteredSimulation;
+
+/**
+ * @brief Test of the simulation of clusters of sub-trees
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestClusteredSimulation {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final double GRAIN_SIZE = 4.0; //!< target nodes of each cluster
+    private static final int SPLITS = 300; //!< leaves split to grow the unbalanced tree
+
+    @Test
+    public void testChildrenBeforeParent() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        assertSimulatedOnce(executor);
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testNoClusterSubmittedTwice() throws InterruptedException {
+
+        // a cluster runs as soon as it is submitted, so the counters move
+        // while the source clusters are still being seeded
+        assertSimulatedOnce(new AbstractExecutorService() {
+                private volatile boolean shutdown;
+
+                public void execute(final Runnable command) { command.run(); }
+                public void shutdown() { shutdown = true; }
+                public List<Runnable> shutdownNow() { shutdown = true; return Collections.emptyList(); }
+                public boolean isShutdown() { return shutdown; }
+                public boolean isTerminated() { return shutdown; }
+                public boolean awaitTermination(final long timeout, final TimeUnit unit) { return true; }
+            });
+
+    }
+
+    private void assertSimulatedOnce(final ExecutorService executor) throws InterruptedException {
+
+        ExecutionOrder complete = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, complete);
+        new ClusteredSimulation(tree, executor, GRAIN_SIZE).run();
+        complete.assertPostOrder(tree);
+
+        ExecutionOrder river = new ExecutionOrder();
+        HashMap<Key, Component> riverTree = SampleTrees.riverTree(SPLITS, 5L, river);
+        new ClusteredSimulation(riverTree, executor, GRAIN_SIZE).run();
+        river.assertPostOrder(riverTree);
+
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.CriticalPathSimulation;
+
+/**
+ * @brief Test of the simulation giving priority to the critical path
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestCriticalPathSimulation {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int SPLITS = 300; //!< leaves split to grow the unbalanced tree
+
+    @Test
+    public void testChildrenBeforeParent() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        ExecutionOrder order = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, order);
+        CriticalPathSimulation sim = new CriticalPathSimulation(tree, executor, 4);
+        sim.run();
+        order.assertPostOrder(tree);
+
+        assertEquals(LAYERS, sim.getCriticalPathLength());
+        assertTrue(sim.getMakespanLowerBound() <= sim.getMakespan());
+
+        ExecutionOrder river = new ExecutionOrder();
+        HashMap<Key, Component> riverTree = SampleTrees.riverTree(SPLITS, 11L, river);
+        new CriticalPathSimulation(riverTree, executor, 4).run();
+        river.assertPostOrder(riverTree);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testLongestPathFirst() throws InterruptedException {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final ExecutionOrder order = new ExecutionOrder();
+        final HashMap<Key, Component> tree = SampleTrees.riverTree(SPLITS, 11L, order);
+
+        new CriticalPathSimulation(tree, executor, 1).run();
+        order.assertPostOrder(tree);
+
+        List<Key> sequence = new ArrayList<Key>(tree.keySet());
+        Collections.sort(sequence, new Comparator<Key>() {
+                public int compare(final Key lhs, final Key rhs) {
+                    return Integer.compare(order.startOf(lhs), order.startOf(rhs));
+                }
+            });
+
+        // with a single worker, each node is the one with the longest path to
+        // the outlet among the nodes ready when it starts
+        HashMap<Key, Integer> pending = new HashMap<Key, Integer>();
+        HashSet<Key> ready = new HashSet<Key>();
+        for (Component comp : tree.values()) {
+            int children = 0;
+            for (Key child : comp.getConnections().getChildren())
+                if (tree.containsKey(child)) children++;
+            pending.put(comp.getConnections().getID(), children);
+            if (children == 0) ready.add(comp.getConnections().getID());
+        }
+
+        for (Key key : sequence) {
+            int longest = 0;
+            for (Key other : ready) longest = Math.max(longest, tree.get(other).getLayer());
+            assertTrue("Node run before it was ready", ready.remove(key));
+            assertEquals("Node run before a longer path", longest, (int) tree.get(key).getLayer());
+
+            Key parent = tree.get(key).getConnections().getPARENT();
+            if (tree.containsKey(parent) && pending.put(parent, pending.get(parent) - 1) == 1) ready.add(parent);
+        }
+
+        executor.shutdown();
+
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.EnsembleKernel;
+import com.wordpress.growworkinghard.riverNe3.simulation.EnsembleSimulation;
+import com.wordpress.growworkinghard.riverNe3.simulation.Tracer;
+import com.wordpress.growworkinghard.riverNe3.simulation.TreeTopology;
+
+/**
+ * @brief Test of the ensemble simulation over a shared tree
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestEnsembleSimulation {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int MEMBERS = 100; //!< members of the ensemble
+
+    @Test
+    public void testEachMemberUsesItsParameters() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        TreeTopology topology = new TreeTopology(TestSubtreePartitioner.completeBinaryTree(LAYERS));
+
+        double[][] parameters = new double[1][MEMBERS];
+        for (int m = 0; m < MEMBERS; m++) parameters[0][m] = m;
+
+        EnsembleKernel runoff = new EnsembleKernel() {
+                public void compute(final Component node, final double[][] parameters, final double[][] inputs, final double[] outputs) {
+                    for (int m = 0; m < outputs.length; m++) {
+                        double value = parameters[0][m];
+                        for (double[] input : inputs) value += input[m];
+                        outputs[m] = value;
+                    }
+                }
+            };
+
+        EnsembleSimulation sim = new EnsembleSimulation(topology, executor, runoff, parameters);
+        Tracer tracer = new Tracer(1024);
+        sim.setTracer(tracer);
+        sim.run();
+
+        assertEquals(topology.size(), tracer.getEventsCount());
+
+        double[] outlet = sim.getOutputs(new Key(1.0));
+        for (int m = 0; m < MEMBERS; m++)
+            assertEquals(topology.size() * (double) m, outlet[m], 0.0);
+
+        executor.shutdown();
+
+    }
+
+}
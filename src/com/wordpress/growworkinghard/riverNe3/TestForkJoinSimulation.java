@@ -0,0 +1,84 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.ForkJoinSimulation;
+
+/**
+ * @brief Test of the simulation with work stealing
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestForkJoinSimulation {
+
+    private static final int LAYERS = 8; //!< layers of the complete binary tree
+    private static final int SPLITS = 500; //!< leaves split to grow the unbalanced tree
+    private static final int THREADS = 4; //!< threads of the pools
+
+    @Test
+    public void testChildrenBeforeParent() throws InterruptedException {
+
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+
+        ExecutionOrder order = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, order);
+        new ForkJoinSimulation(tree, pool).run();
+        order.assertPostOrder(tree);
+
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void testSameResultsOfTheReadyQueue() throws InterruptedException {
+
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        for (long seed = 1; seed <= 5; seed++) {
+            ExecutionOrder stealing = new ExecutionOrder();
+            HashMap<Key, Component> tree = SampleTrees.riverTree(SPLITS, seed, stealing);
+            new ForkJoinSimulation(tree, pool).run();
+            stealing.assertPostOrder(tree);
+
+            ExecutionOrder queue = new ExecutionOrder();
+            HashMap<Key, Component> sameTree = SampleTrees.riverTree(SPLITS, seed, queue);
+            new RunSimulations(sameTree, executor, THREADS).run();
+
+            assertEquals("Results differ from RunSimulations", queue.getResults(), stealing.getResults());
+        }
+
+        pool.shutdown();
+        executor.shutdown();
+
+    }
+
+}
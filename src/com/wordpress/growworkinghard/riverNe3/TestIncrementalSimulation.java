@@ -0,0 +1,84 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.IncrementalSimulation;
+import com.wordpress.growworkinghard.riverNe3.simulation.SimulationKernel;
+
+/**
+ * @brief Test of the re-simulation of the changed sub-basins
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestIncrementalSimulation {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int TIME_STEPS = 10; //!< time-steps of the simulation
+
+    @Test
+    public void testOnlyTheAncestorsAreRecomputed() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        final ConcurrentHashMap<Key, Double> runoff = new ConcurrentHashMap<Key, Double>();
+        for (Key key : tree.keySet()) runoff.put(key, 1.0);
+
+        SimulationKernel kernel = new SimulationKernel() {
+                public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+                    double local = runoff.get(node.getConnections().getID());
+                    for (int k = 0; k < steps; k++) {
+                        double value = local;
+                        for (double[] input : inputs) value += input[k];
+                        output[k] = value;
+                    }
+                }
+            };
+
+        IncrementalSimulation sim = new IncrementalSimulation(tree, executor, kernel, TIME_STEPS);
+        Key root = new Key(1.0);
+        Key leaf = new Key(37.0);
+
+        sim.run();
+        assertEquals(tree.size(), sim.getLastRecomputed());
+        assertEquals(tree.size(), sim.getOutput(root)[0], 0.0);
+
+        runoff.put(leaf, 11.0);
+        sim.rerun(Collections.singleton(leaf));
+        assertEquals(LAYERS, sim.getLastRecomputed()); // the leaf and its ancestors
+        for (double value : sim.getOutput(root))
+            assertEquals(tree.size() + 10.0, value, 0.0);
+
+        executor.shutdown();
+
+    }
+
+}
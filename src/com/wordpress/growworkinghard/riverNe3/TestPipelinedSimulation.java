@@ -0,0 +1,124 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.PipelinedSimulation;
+import com.wordpress.growworkinghard.riverNe3.simulation.SimulationKernel;
+
+/**
+ * @brief Test of the multi time-step simulation as a pipeline
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestPipelinedSimulation {
+
+    private static final int LAYERS = 5; //!< layers of the complete binary tree
+    private static final int STEPS = 50; //!< time-steps of the simulation
+    private static final int LOOKAHEAD = 3; //!< steps a node can be ahead of its parent
+
+    @Test
+    public void testStepsOrder() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        final ConcurrentHashMap<String, Integer> order = new ConcurrentHashMap<String, Integer>();
+        final AtomicInteger counter = new AtomicInteger();
+        final AtomicInteger repeated = new AtomicInteger();
+
+        new PipelinedSimulation(tree, executor, STEPS, LOOKAHEAD) {
+                @Override
+                protected void simulateStep(final Component node, final Component parent, final int step) {
+                    if (order.put(stepOf(node.getConnections().getID(), step), counter.getAndIncrement()) != null)
+                        repeated.incrementAndGet();
+                }
+            }.run();
+
+        assertEquals("Step simulated more than once", 0, repeated.get());
+        assertEquals(tree.size() * STEPS, order.size());
+
+        for (Component comp : tree.values()) {
+            Key key = comp.getConnections().getID();
+            for (int step = 0; step < STEPS; step++) {
+                int start = order.get(stepOf(key, step));
+                if (step > 0) assertTrue("Steps of a node out of order", order.get(stepOf(key, step - 1)) < start);
+
+                for (Key child : comp.getConnections().getChildren())
+                    if (tree.containsKey(child))
+                        assertTrue("Step before the children", order.get(stepOf(child, step)) < start);
+
+                Key parent = comp.getConnections().getPARENT();
+                if (tree.containsKey(parent) && step >= LOOKAHEAD)
+                    assertTrue("Window exceeded", order.get(stepOf(parent, step - LOOKAHEAD)) < start);
+            }
+        }
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testBufferedOutputs() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        final ConcurrentHashMap<Integer, Double> outlet = new ConcurrentHashMap<Integer, Double>();
+
+        // each node adds the time-step to the flow of its children, so the
+        // outlet sees step * nodes only if no buffer is overwritten too early
+        PipelinedSimulation sim = new PipelinedSimulation(tree, executor, new SimulationKernel() {
+                public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+                    double flow = firstStep;
+                    for (double[] input : inputs) flow += input[0];
+                    output[0] = flow;
+                    if (node.getLayer() == 1) outlet.put(firstStep, flow);
+                }
+            }, STEPS, LOOKAHEAD);
+        sim.run();
+
+        for (int step = 0; step < STEPS; step++) {
+            assertNotNull("Missing step " + step, outlet.get(step));
+            assertEquals((double) step * tree.size(), outlet.get(step), 0.0);
+        }
+        for (int step = STEPS - LOOKAHEAD; step < STEPS; step++)
+            assertEquals((double) step * tree.size(), sim.getOutput(new Key(1.0), step), 0.0);
+
+        executor.shutdown();
+
+    }
+
+    private static String stepOf(final Key key, final int step) {
+        return key.getString() + "@" + step;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.Leaf;
+import com.wordpress.growworkinghard.riverNe3.composite.Node;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Basin;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Entity;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Hydrometer;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.River;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.IncrementalSimulation;
+import com.wordpress.growworkinghard.riverNe3.simulation.ProcessSimulation;
+import com.wordpress.growworkinghard.riverNe3.simulation.SimulationKernel;
+
+/**
+ * @brief Test of the simulation split among worker processes
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestProcessSimulation {
+
+    private static final int LAYERS = 7; //!< layers of the complete binary tree
+    private static final int TIME_STEPS = 50; //!< time-steps of the simulation
+
+    /**
+     * @brief Each node adds a value depending on its key to the damped sum of
+     *        its children
+     */
+    public static class Routing implements SimulationKernel {
+        public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+            double local = Math.sqrt(node.getConnections().getID().getDouble());
+            for (int k = 0; k < steps; k++) {
+                double value = local * (firstStep + k);
+                for (double[] input : inputs) value += 0.9 * input[k];
+                output[k] = value;
+            }
+        }
+    }
+
+    /**
+     * @brief The value added by each node depends on its entity: the area of
+     *        a basin or the position of a hydrometer
+     */
+    public static class EntityRouting implements SimulationKernel {
+        public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+            Entity entity = node.getEntity();
+            double local = (entity instanceof Hydrometer) ? -entity.getPoint().x : ((Basin) entity).getBasinArea();
+            for (int k = 0; k < steps; k++) {
+                double value = local;
+                for (double[] input : inputs) value += 0.9 * input[k];
+                output[k] = value;
+            }
+        }
+    }
+
+    /**
+     * @brief A kernel that never ends
+     */
+    public static class Hanging implements SimulationKernel {
+        public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class, timeout = 60000)
+    public void testHangingWorkerTimesOut() throws InterruptedException {
+
+        new ProcessSimulation(TestSubtreePartitioner.completeBinaryTree(LAYERS), 2, Hanging.class, TIME_STEPS, 2000).run();
+
+    }
+
+    @Test
+    public void testSameOutputsOfOneProcess() throws InterruptedException {
+
+        assertSameOutputs(TestSubtreePartitioner.completeBinaryTree(LAYERS), new Routing());
+
+    }
+
+    @Test
+    public void testSameEntitiesOfOneProcess() throws InterruptedException {
+
+        HashMap<Key, Component> tree = new HashMap<Key, Component>();
+        Coordinate2D point = new Coordinate2D(0.0, 0.0);
+
+        for (Component comp : TestSubtreePartitioner.completeBinaryTree(LAYERS).values()) {
+            double id = comp.getConnections().getID().getDouble();
+            Entity entity = ((int) id % 3 == 0) ?
+                new Hydrometer(new Coordinate2D(id, 1.0)) :
+                new Basin(new River(point, point), 10.0 * id);
+            Component node = (comp.getLayer() == LAYERS) ?
+                new Leaf(comp.getConnections(), comp.getLayer(), entity) :
+                new Node(comp.getConnections(), comp.getLayer(), entity);
+            tree.put(comp.getConnections().getID(), node);
+        }
+
+        assertSameOutputs(tree, new EntityRouting());
+
+    }
+
+    private void assertSameOutputs(final HashMap<Key, Component> tree, final SimulationKernel kernel) throws InterruptedException {
+
+        Key root = new Key(1.0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        IncrementalSimulation local = new IncrementalSimulation(tree, executor, kernel, TIME_STEPS);
+        local.run();
+        executor.shutdown();
+
+        ProcessSimulation sim = new ProcessSimulation(tree, 2, kernel.getClass(), TIME_STEPS);
+        sim.run();
+
+        assertTrue(sim.getUpperCount() > 0);
+        assertArrayEquals(local.getOutput(root), sim.getOutput(root), 0.0);
+
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.Node;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Basin;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.River;
+import com.wordpress.growworkinghard.riverNe3.composite.key.BinaryConnections;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+/**
+ * @brief Test of the notifications of the children to a node
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestReadyFlags {
+
+    private static final int ROUNDS = 10000; //!< nodes notified by both children at the same time
+
+    @Test
+    public void testOnlyTheLastNotificationMakesReady() {
+
+        Coordinate2D point = new Coordinate2D(0.0, 0.0);
+        Component node = new Node(new BinaryConnections(new Key(2.0)), 2, new Basin(new River(point, point), null));
+
+        assertFalse(node.isReadyForSimulation());
+        assertFalse(node.notify(new Key(4.0)));
+        assertFalse(node.notify(new Key(4.0))); // the same child twice
+        assertFalse(node.notify(new Key(7.0))); // not a child
+        assertFalse(node.isReadyForSimulation());
+        assertTrue(node.notify(new Key(5.0)));
+        assertTrue(node.isReadyForSimulation());
+
+    }
+
+    @Test
+    public void testConcurrentNotifications() throws InterruptedException {
+
+        Coordinate2D point = new Coordinate2D(0.0, 0.0);
+        final Component[] nodes = new Component[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++)
+            nodes[i] = new Node(new BinaryConnections(new Key(2.0)), 2, new Basin(new River(point, point), null));
+
+        final boolean[] left = new boolean[ROUNDS];
+        final boolean[] right = new boolean[ROUNDS];
+        final CyclicBarrier round = new CyclicBarrier(2); // both children notify the same node together
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+        Thread leftChild = new Thread(new Notifications(nodes, new Key(4.0), left, round, failure));
+        Thread rightChild = new Thread(new Notifications(nodes, new Key(5.0), right, round, failure));
+        leftChild.start();
+        rightChild.start();
+        leftChild.join();
+        rightChild.join();
+
+        assertNull(failure.get());
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals("Round " + i + ": not exactly one child made the node ready", 1, (left[i] ? 1 : 0) + (right[i] ? 1 : 0));
+            assertTrue(nodes[i].isReadyForSimulation());
+        }
+
+    }
+
+    /**
+     * @brief A child notifying each node, one round at a time
+     */
+    private static class Notifications implements Runnable {
+
+        private final Component[] nodes;
+        private final Key child;
+        private final boolean[] ready;
+        private final CyclicBarrier round;
+        private final AtomicReference<Exception> failure;
+
+        Notifications(final Component[] nodes, final Key child, final boolean[] ready, final CyclicBarrier round, final AtomicReference<Exception> failure) {
+            this.nodes = nodes;
+            this.child = child;
+            this.ready = ready;
+            this.round = round;
+            this.failure = failure;
+        }
+
+        public void run() {
+            try {
+                for (int i = 0; i < nodes.length; i++) {
+                    round.await();
+                    ready[i] = nodes[i].notify(child);
+                }
+            } catch (InterruptedException | BrokenBarrierException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+    }
+
+}
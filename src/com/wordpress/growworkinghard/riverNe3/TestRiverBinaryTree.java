@@ -0,0 +1,554 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.GhostNode;
+import com.wordpress.growworkinghard.riverNe3.composite.Node;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.dataReader.DataStreaming;
+import com.wordpress.growworkinghard.riverNe3.dataReader.GeometrySink;
+import com.wordpress.growworkinghard.riverNe3.dataReader.dbfProcessing.DbfLinesProcessing;
+import com.wordpress.growworkinghard.riverNe3.geometry.Geometry;
+import com.wordpress.growworkinghard.riverNe3.geometry.Line;
+import com.wordpress.growworkinghard.riverNe3.tree.building.binaryTree.RiverBinaryTree;
+import com.wordpress.growworkinghard.riverNe3.tree.building.binaryTree.StreamingRiverBinaryTree;
+
+/**
+ * @brief Test of the building of the binary tree, on an executor, on a
+ *        fork/join pool and streamed from the reader
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestRiverBinaryTree {
+
+    private static final int THREADS = 4; //!< threads of the shared executor
+    private static final int BASINS = 16; //!< basins built at the same time
+    private static final int SCALING_LAYERS = 16; //!< layers of the network timed by the scaling test
+    private static final double MIN_SPEEDUP = 1.5; //!< speedup expected from THREADS cores
+
+    @Test
+    public void testSingleBasin() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        HashMap<Key, Component> tree = new RiverBinaryTree(completeNetwork(8), THREADS, executor).computeNodes();
+        assertCompleteTree(tree, 8);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testBasinsOnSharedExecutor() throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // each basin is built by a task of the same executor which runs its
+        // helper threads: the build must not wait for tasks queued behind it
+        List<Future<HashMap<Key, Component>>> trees = new ArrayList<Future<HashMap<Key, Component>>>();
+        for (int b = 0; b < BASINS; b++) {
+            final int layers = 3 + b % 6;
+            trees.add(executor.submit(new Callable<HashMap<Key, Component>>() {
+                @Override
+                public HashMap<Key, Component> call() {
+                    return new RiverBinaryTree(completeNetwork(layers), THREADS, executor).computeNodes();
+                }
+            }));
+        }
+
+        for (int b = 0; b < BASINS; b++)
+            assertCompleteTree(trees.get(b).get(), 3 + b % 6);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testKeysCollideBeyondTheirPrecision() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        String treeDataPath = System.getProperty("user.dir") + "/data/net_big.dbf";
+        String[] colNames = {"pfaf", "X_start", "Y_start", "X_end", "Y_end"};
+
+        // the network reaches layer 61, beyond the 53 bits of a key: the
+        // colliding nodes must not be dropped silently
+        try {
+            new RiverBinaryTree(new DbfLinesProcessing(treeDataPath, colNames).fileProcessing(), THREADS, executor).computeNodes();
+            fail("Colliding keys not detected on an executor");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("too deep"));
+        }
+
+        try {
+            new StreamingRiverBinaryTree(new DbfLinesProcessing(treeDataPath, colNames), executor).computeNodes();
+            fail("Colliding keys not detected while streaming");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("too deep"));
+        }
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testHelpersOnlyForBranches() {
+
+        final AtomicInteger helpers = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        ExecutorService counting = new AbstractExecutorService() {
+            @Override public void execute(final Runnable command) { helpers.incrementAndGet(); executor.execute(command); }
+            @Override public void shutdown() { executor.shutdown(); }
+            @Override public List<Runnable> shutdownNow() { return executor.shutdownNow(); }
+            @Override public boolean isShutdown() { return executor.isShutdown(); }
+            @Override public boolean isTerminated() { return executor.isTerminated(); }
+            @Override public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+                return executor.awaitTermination(timeout, unit);
+            }
+        };
+
+        // a single reach after the other: no root has two children, so the
+        // calling thread builds the tree without asking for idle helpers
+        HashMap<Key, Component> tree = new RiverBinaryTree(chainNetwork(32), THREADS, counting).computeNodes();
+        assertEquals("Wrong number of nodes", 32, tree.size());
+        assertEquals("Helpers asked without branches", 0, helpers.get());
+
+        HashMap<Key, Component> branched = new RiverBinaryTree(completeNetwork(8), THREADS, counting).computeNodes();
+        assertCompleteTree(branched, 8);
+        assertTrue("No helper asked for the branches", helpers.get() > 0);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testForkJoin() {
+
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+
+        HashMap<Key, Component> tree = new RiverBinaryTree(completeNetwork(10), pool).computeNodes();
+        assertCompleteTree(tree, 10);
+
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void testForkJoinGhostNodes() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+
+        HashMap<Key, Component> expected = new RiverBinaryTree(ghostNetwork(7), THREADS, executor).computeNodes();
+        HashMap<Key, Component> tree = new RiverBinaryTree(ghostNetwork(7), pool).computeNodes();
+
+        assertEquals("Fork/join and queue trees differ", expected.keySet(), tree.keySet());
+
+        executor.shutdown();
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void testForkJoinChain() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+
+        // a main stem without tributaries is built in a single loop
+        HashMap<Key, Component> expected = new RiverBinaryTree(chainNetwork(48), THREADS, executor).computeNodes();
+        HashMap<Key, Component> tree = new RiverBinaryTree(chainNetwork(48), pool).computeNodes();
+        assertEquals(48, tree.size());
+        assertEquals("Fork/join and queue trees differ", expected.keySet(), tree.keySet());
+
+        executor.shutdown();
+        pool.shutdown();
+
+    }
+
+    @Test
+    public void testForkJoinKeysCollide() throws Exception {
+
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        String treeDataPath = System.getProperty("user.dir") + "/data/net_big.dbf";
+        String[] colNames = {"pfaf", "X_start", "Y_start", "X_end", "Y_end"};
+
+        try {
+            new RiverBinaryTree(new DbfLinesProcessing(treeDataPath, colNames).fileProcessing(), pool).computeNodes();
+            fail("Colliding keys not detected on a fork/join pool");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("too deep"));
+        }
+
+        pool.shutdown();
+
+    }
+
+    /**
+     * @brief The fork/join build on <code>THREADS</code> cores is faster than
+     *        on one
+     *
+     * @description Skipped on a machine with less cores, where the threads
+     *              only share the same core.
+     */
+    @Test
+    public void testForkJoinScaling() {
+
+        assumeTrue("Less than " + THREADS + " cores", Runtime.getRuntime().availableProcessors() >= THREADS);
+
+        bestForkJoinTime(THREADS); // warm-up of the compiler
+        long sequential = bestForkJoinTime(1);
+        long parallel = bestForkJoinTime(THREADS);
+        assertTrue("Speedup " + (double) sequential / parallel + " on " + THREADS + " cores",
+                   sequential > MIN_SPEEDUP * parallel);
+
+    }
+
+    /**
+     * @brief The best time of three fork/join builds of a network with ghost
+     *        nodes
+     *
+     * @param[in] threads The parallelism of the pool
+     * @return The best time, in nanoseconds
+     */
+    private static long bestForkJoinTime(final int threads) {
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long best = Long.MAX_VALUE;
+
+        for (int run = 0; run < 3; run++) {
+            HashMap<Integer, Geometry> inputData = ghostNetwork(SCALING_LAYERS);
+            long start = System.nanoTime();
+            new RiverBinaryTree(inputData, pool).computeNodes();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        pool.shutdown();
+        return best;
+
+    }
+
+    @Test
+    public void testSnapping() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        HashMap<Integer, Geometry> inputData = completeNetwork(6);
+        int moved = 0;
+        for (int k = 2; k < (1 << 6); k += 3) { // noise in the last digits
+            Geometry line = inputData.get(k);
+            line.setEndPoint(line.getEndPoint().x + 1e-7, line.getEndPoint().y - 1e-7);
+            moved++;
+        }
+
+        RiverBinaryTree exact = new RiverBinaryTree(copyOf(inputData), THREADS, executor);
+        try {
+            exact.computeNodes();
+            fail("Lines not exactly connected must not be linked");
+        } catch (UnsupportedOperationException e) {}
+
+        RiverBinaryTree snapped = new RiverBinaryTree(inputData, THREADS, executor);
+        snapped.enableSnapping(1e-6);
+        assertCompleteTree(snapped.computeNodes(), 6);
+
+        assertEquals(moved, snapped.getSnappedEndPoints());
+        assertEquals(Math.sqrt(2.0) * 1e-7, snapped.getMaxSnapDistance(), 1e-12);
+        assertEquals(moved * Math.sqrt(2.0) * 1e-7, snapped.getTotalSnapDistance(), 1e-12);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testStreamingGhostNodes() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        HashMap<Key, Component> expected = new RiverBinaryTree(ghostNetwork(7), THREADS, executor).computeNodes();
+        HashMap<Key, Component> tree = new StreamingRiverBinaryTree(streamOf(ghostNetwork(7), false), executor).computeNodes();
+        assertSameTree(expected, tree);
+
+        // the tributaries of each junction are sorted by key, whatever the
+        // order of the records
+        HashMap<Key, Component> reversed = new StreamingRiverBinaryTree(streamOf(ghostNetwork(7), true), executor).computeNodes();
+        assertSameTree(expected, reversed);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testStreamingZeroLengthReach() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // a real line starting where it ends, flowing into a leaf, is neither
+        // a ghost node nor a line left out of the tree
+        HashMap<Integer, Geometry> inputData = ghostNetwork(5);
+        Geometry reach = new Line();
+        reach.setStartPoint(17.0, 0.0);
+        reach.setEndPoint(17.0, 0.0);
+        inputData.put(100, reach);
+
+        HashMap<Key, Component> expected = new RiverBinaryTree(copyOf(inputData), THREADS, executor).computeNodes();
+        HashMap<Key, Component> tree = new StreamingRiverBinaryTree(streamOf(inputData, false), executor).computeNodes();
+        assertSameTree(expected, tree);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testZeroLengthReachWithChildren() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+
+        // the outlet starts where it ends, at the junction of its children:
+        // it is a real node, not a ghost one
+        HashMap<Integer, Geometry> inputData = completeNetwork(6);
+        inputData.get(1).setEndPoint(1.0, 0.0);
+
+        HashMap<Key, Component> queue = new RiverBinaryTree(copyOf(inputData), THREADS, executor).computeNodes();
+        HashMap<Key, Component> forkJoin = new RiverBinaryTree(copyOf(inputData), pool).computeNodes();
+        HashMap<Key, Component> streamed = new StreamingRiverBinaryTree(streamOf(inputData, false), executor).computeNodes();
+
+        assertCompleteTree(queue, 6);
+        assertEquals(Node.class, queue.get(new Key(1.0)).getClass());
+        for (Component comp : queue.values())
+            assertFalse("Ghost node " + comp.getConnections().getID().getDouble(), comp instanceof GhostNode);
+        assertSameTree(queue, forkJoin);
+        assertSameTree(queue, streamed);
+
+        executor.shutdown();
+        pool.shutdown();
+
+    }
+
+    @Test(timeout = 60000)
+    public void testStreamingBasinsOnSharedExecutor() throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // every thread of the executor builds a basin, so the reading tasks
+        // are queued behind the builds which would wait for them
+        List<Future<HashMap<Key, Component>>> trees = new ArrayList<Future<HashMap<Key, Component>>>();
+        for (int b = 0; b < BASINS; b++) {
+            final int layers = 3 + b % 6;
+            trees.add(executor.submit(new Callable<HashMap<Key, Component>>() {
+                @Override
+                public HashMap<Key, Component> call() {
+                    return new StreamingRiverBinaryTree(streamOf(completeNetwork(layers), false), executor).computeNodes();
+                }
+            }));
+        }
+
+        for (int b = 0; b < BASINS; b++)
+            assertCompleteTree(trees.get(b).get(), 3 + b % 6);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testStreamingDbf() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        String treeDataPath = System.getProperty("user.dir") + "/data/net.dbf";
+        String[] colNames = {"pfaf", "X_start", "Y_start", "X_end", "Y_end"};
+
+        HashMap<Integer, Geometry> inputData = new DbfLinesProcessing(treeDataPath, colNames).fileProcessing();
+        HashMap<Key, Component> expected = new RiverBinaryTree(inputData, THREADS, executor).computeNodes();
+        HashMap<Key, Component> tree = new StreamingRiverBinaryTree(new DbfLinesProcessing(treeDataPath, colNames), executor).computeNodes();
+
+        assertEquals("Streamed and queue trees differ", expected.keySet(), tree.keySet());
+
+        executor.shutdown();
+
+    }
+
+    /**
+     * @brief The lines of a river network without tributaries
+     *
+     * @description The line <code>k</code> starts at <code>(k, 0)</code> and
+     *              ends at the starting point of the line <code>k - 1</code>.
+     *
+     * @param[in] lines The number of lines of the network
+     * @return The input data, as read from a dbf file
+     */
+    private static HashMap<Integer, Geometry> chainNetwork(final int lines) {
+
+        HashMap<Integer, Geometry> inputData = new HashMap<Integer, Geometry>();
+
+        for (int k = 1; k <= lines; k++) {
+            Geometry line = new Line();
+            if (k == 1) {
+                line.setRoot(true);
+                line.setKey(new Key(1.0));
+                line.setParentKey(new Key(0.0));
+                line.setLayer(1);
+            }
+            line.setStartPoint(k, 0.0);
+            line.setEndPoint(k - 1, 0.0);
+            inputData.put(k, line);
+        }
+
+        return inputData;
+
+    }
+
+    /**
+     * @brief The lines of a complete binary river network
+     *
+     * @description The line with Pfafstetter-like number <code>k</code> starts
+     *              at <code>(k, 0)</code> and ends at the starting point of
+     *              its parent <code>k / 2</code>; the main root ends at the
+     *              outlet <code>(0, 0)</code>.
+     *
+     * @param[in] layers The number of layers of the network
+     * @return The input data, as read from a dbf file
+     */
+    static HashMap<Integer, Geometry> completeNetwork(final int layers) {
+
+        HashMap<Integer, Geometry> inputData = new HashMap<Integer, Geometry>();
+
+        for (int k = 1; k < (1 << layers); k++) {
+            Geometry line = new Line();
+            if (k == 1) {
+                line.setRoot(true);
+                line.setKey(new Key(1.0));
+                line.setParentKey(new Key(0.0));
+                line.setLayer(1);
+            }
+            line.setStartPoint(k, 0.0);
+            line.setEndPoint(k / 2, 0.0);
+            inputData.put(k, line);
+        }
+
+        return inputData;
+
+    }
+
+    /**
+     * @brief A complete binary river network with a third tributary at each
+     *        junction of an even line, which requires a ghost node
+     *
+     * @param[in] layers The number of layers of the complete network
+     * @return The input data, as read from a dbf file
+     */
+    static HashMap<Integer, Geometry> ghostNetwork(final int layers) {
+
+        HashMap<Integer, Geometry> inputData = completeNetwork(layers);
+        int nextKey = 1 << layers;
+
+        for (int k = 2; k < (1 << (layers - 1)); k += 2) {
+            Geometry line = new Line();
+            line.setStartPoint(k, 1.0);
+            line.setEndPoint(k, 0.0);
+            inputData.put(nextKey++, line);
+        }
+
+        return inputData;
+
+    }
+
+    /**
+     * @brief A stream of the input data, sorted by key
+     *
+     * @param[in] inputData The input data
+     * @param[in] descending <code>true</code> to stream the records in
+     *            descending order of key
+     * @return The stream
+     */
+    private static DataStreaming streamOf(final HashMap<Integer, Geometry> inputData, final boolean descending) {
+
+        return new DataStreaming() {
+            @Override
+            public void fileProcessing(final GeometrySink sink) throws InterruptedException {
+                TreeSet<Integer> keys = new TreeSet<Integer>(inputData.keySet());
+                for (Integer key : descending ? keys.descendingSet() : keys)
+                    sink.put(key, inputData.get(key));
+            }
+        };
+
+    }
+
+    private static HashMap<Integer, Geometry> copyOf(final HashMap<Integer, Geometry> inputData) {
+
+        HashMap<Integer, Geometry> copy = new HashMap<Integer, Geometry>();
+        for (Integer key : inputData.keySet()) {
+            Geometry line = new Line();
+            Geometry original = inputData.get(key);
+            if (original.isRoot()) {
+                line.setRoot(true);
+                line.setKey(original.getKey());
+                line.setParentKey(original.getParentKey());
+                line.setLayer(original.getLayer());
+            }
+            line.setStartPoint(original.getStartPoint());
+            line.setEndPoint(original.getEndPoint());
+            copy.put(key, line);
+        }
+        return copy;
+
+    }
+
+    private void assertSameTree(final HashMap<Key, Component> expected, final HashMap<Key, Component> tree) {
+
+        assertEquals("Streamed and queue trees differ", expected.keySet(), tree.keySet());
+        for (Key key : expected.keySet()) {
+            assertEquals("Different node " + key.getDouble(), expected.get(key).getClass(), tree.get(key).getClass());
+            assertEquals("Different line " + key.getDouble(),
+                         expected.get(key).getEntity().getStartPoint(), tree.get(key).getEntity().getStartPoint());
+        }
+
+    }
+
+    private void assertCompleteTree(final HashMap<Key, Component> tree, final int layers) {
+
+        assertEquals("Wrong number of nodes", (1 << layers) - 1, tree.size());
+        for (int k = 1; k < (1 << layers); k++)
+            assertNotNull("Missing node " + k, tree.get(new Key((double) k)));
+
+    }
+
+}
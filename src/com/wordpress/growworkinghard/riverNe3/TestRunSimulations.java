@@ -0,0 +1,337 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.GhostNode;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+/**
+ * @brief Test of the scheduling and of the deterministic orders of
+ *        RunSimulations
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestRunSimulations {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int THREADS = 4; //!< workers of the simulation
+    private static final int SPLITS = 300; //!< leaves split to grow the unbalanced tree
+
+    @Test
+    public void testChildrenBeforeParent() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        ExecutionOrder complete = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, complete);
+        new RunSimulations(tree, executor, THREADS).run();
+        complete.assertPostOrder(tree);
+
+        ExecutionOrder river = new ExecutionOrder();
+        HashMap<Key, Component> riverTree = SampleTrees.riverTree(SPLITS, 7L, river);
+        int ghosts = 0;
+        for (Component comp : riverTree.values())
+            if (comp instanceof GhostNode) ghosts++;
+        assertTrue("No ghost node in the tree", ghosts > 0);
+
+        new RunSimulations(riverTree, executor, THREADS).run();
+        river.assertPostOrder(riverTree);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testSeededOrder() {
+
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        List<Key> order = RunSimulations.seededOrder(tree, 42);
+
+        assertEquals(tree.size(), order.size());
+        assertEquals(order, RunSimulations.seededOrder(tree, 42));
+        assertNotEquals(order, RunSimulations.seededOrder(tree, 43));
+
+        HashSet<Key> started = new HashSet<Key>();
+        for (Key key : order) {
+            for (Key child : tree.get(key).getConnections().getChildren())
+                if (tree.containsKey(child)) assertTrue("Child after its parent", started.contains(child));
+            started.add(key);
+        }
+
+        new RunSimulations(tree, null, 1).replay(order); // accepted as a valid order
+
+    }
+
+    @Test
+    public void testReplayOfAWrittenOrder() throws InterruptedException, IOException {
+
+        assertReplayOfAWrittenOrder(1);
+        assertReplayOfAWrittenOrder(THREADS);
+
+    }
+
+    /**
+     * @brief Record an order, write it, read it back, replay it and compare
+     *        the runs
+     *
+     * @description With a single thread the replay starts the nodes in the
+     *              recorded order; with more threads only the results are the
+     *              same.
+     *
+     * @param[in] threads The workers of the simulations
+     */
+    private static void assertReplayOfAWrittenOrder(final int threads) throws InterruptedException, IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        File file = File.createTempFile("riverNe3", ".order");
+        file.deleteOnExit();
+
+        ExecutionOrder recorded = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.riverTree(SPLITS, 19L, recorded);
+        RunSimulations record = new RunSimulations(tree, executor, threads);
+        record.run();
+        recorded.assertPostOrder(tree);
+        record.writeExecutionOrder(file.getPath());
+
+        List<Key> order = RunSimulations.readExecutionOrder(file.getPath());
+        assertEquals(record.getExecutionOrder(), order);
+
+        ExecutionOrder replayed = new ExecutionOrder();
+        HashMap<Key, Component> replayTree = SampleTrees.riverTree(SPLITS, 19L, replayed);
+        RunSimulations replay = new RunSimulations(replayTree, executor, threads);
+        replay.replay(order);
+        replay.run();
+        replayed.assertPostOrder(replayTree);
+        assertEquals(recorded.getResults(), replayed.getResults());
+        if (threads == 1) assertEquals(order, replay.getExecutionOrder());
+
+        ExecutionOrder seeded = new ExecutionOrder();
+        HashMap<Key, Component> seededTree = SampleTrees.riverTree(SPLITS, 19L, seeded);
+        RunSimulations replaySeeded = new RunSimulations(seededTree, executor, threads);
+        replaySeeded.replaySeeded(23L);
+        replaySeeded.run();
+        seeded.assertPostOrder(seededTree);
+        assertEquals(recorded.getResults(), seeded.getResults());
+        if (threads == 1) assertEquals(RunSimulations.seededOrder(seededTree, 23L), replaySeeded.getExecutionOrder());
+
+        executor.shutdown();
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReplayRejectsParentBeforeChild() {
+
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        List<Key> order = RunSimulations.seededOrder(tree, 42);
+        order.add(0, order.remove(order.size() - 1)); // the root first
+
+        new RunSimulations(tree, null, 1).replay(order);
+
+    }
+
+    @Test
+    public void testActiveWorkersFollowTheController() throws Exception {
+
+        final List<Thread> workers = new CopyOnWriteArrayList<Thread>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "worker-" + workers.size()); // the i-th worker submitted
+                    workers.add(thread);
+                    return thread;
+                }
+            });
+        final CountDownLatch leavesStarted = new CountDownLatch(2);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final ConcurrentHashMap<Key, String> threads = new ConcurrentHashMap<Key, String>();
+
+        // two leaves keep two workers busy, the other two are parked on the
+        // empty ready queue when the active workers shrink to one
+        final RunSimulations sim = new RunSimulations(SampleTrees.completeBinaryTree(2), executor, THREADS) {
+                @Override
+                protected void simulate(final Component comp, final Component parent) {
+                    threads.put(comp.getConnections().getID(), Thread.currentThread().getName());
+                    if (comp.getLayer() == 2) {
+                        leavesStarted.countDown();
+                        try {
+                            gate.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            };
+
+        Thread run = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        sim.run();
+                    } catch (InterruptedException e) {}
+                }
+            });
+        run.start();
+
+        leavesStarted.await();
+        while (workers.size() < THREADS || !allWaiting(workers)) Thread.sleep(1);
+        sim.setActiveWorkers(1);
+        gate.countDown();
+        run.join();
+
+        assertEquals(1, sim.getActiveWorkers());
+        assertEquals("The outlet run by an inactive worker", "worker-0", threads.get(new Key(1.0)));
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testMetrics() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        final AtomicReference<SchedulerMetrics> atOutlet = new AtomicReference<SchedulerMetrics>();
+
+        RunSimulations sim = new RunSimulations(tree, executor, THREADS) {
+                @Override
+                protected void simulate(final Component comp, final Component parent) {
+                    if (parent == null) atOutlet.set(getMetrics()); // taken while running
+                }
+            };
+        sim.run();
+
+        SchedulerMetrics running = atOutlet.get();
+        assertEquals(tree.size(), running.getTotalNodes());
+        assertEquals(tree.size() - 1, running.getCompletedNodes());
+        assertTrue(running.getRunningNodes() >= 1); // the worker releasing the outlet may still count as busy
+        assertEquals(0, running.getBlockedNodes());
+
+        SchedulerMetrics metrics = sim.getMetrics();
+        assertEquals(tree.size(), metrics.getCompletedNodes());
+        assertEquals(0, metrics.getRunningNodes());
+        assertEquals(0, metrics.getReadyNodes());
+        assertEquals(0, metrics.getBlockedNodes());
+        assertEquals(THREADS, metrics.getBusyTime().length);
+        assertEquals(THREADS, metrics.getIdleTime().length);
+        assertTrue(metrics.getWaits() >= 0 && metrics.getCasFailures() >= 0);
+        assertTrue(metrics.getUtilisation() >= 0.0 && metrics.getUtilisation() <= 1.0);
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testMBeanRegistration() throws Exception {
+
+        HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        RunSimulations sim = new RunSimulations(tree, null, THREADS);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        ObjectName name = sim.registerMBean();
+        assertTrue(server.isRegistered(name));
+        assertEquals("Registered twice", name, sim.registerMBean());
+
+        assertEquals(0L, server.getAttribute(name, "CompletedNodes"));
+        assertEquals((long) tree.size(), server.getAttribute(name, "BlockedNodes"));
+        assertEquals(sim.getActiveWorkers(), server.getAttribute(name, "ActiveWorkers"));
+        CompositeData metrics = (CompositeData) server.getAttribute(name, "Metrics");
+        assertEquals(tree.size(), metrics.get("totalNodes"));
+
+        sim.unregisterMBean();
+        assertFalse(server.isRegistered(name));
+
+    }
+
+    @Test
+    public void testContinuation() throws InterruptedException {
+
+        ExecutionOrder complete = new ExecutionOrder();
+        assertContinuation(SampleTrees.completeBinaryTree(LAYERS, complete), complete);
+
+        ExecutionOrder river = new ExecutionOrder();
+        assertContinuation(SampleTrees.riverTree(SPLITS, 31L, river), river);
+
+    }
+
+    /**
+     * @brief Assert that each parent runs on the thread of one of its
+     *        children
+     *
+     * @param[in] tree The tree structure, recorded by the order
+     * @param[in] order The recorder of the simulations
+     */
+    private static void assertContinuation(final HashMap<Key, Component> tree, final ExecutionOrder order) throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        RunSimulations sim = new RunSimulations(tree, executor, THREADS);
+        sim.enableContinuation();
+        sim.run();
+
+        order.assertPostOrder(tree);
+
+        int parents = 0;
+        for (Component comp : tree.values()) {
+            HashSet<String> childThreads = new HashSet<String>(); // one of them completed the last child
+            for (Key child : comp.getConnections().getChildren())
+                if (tree.containsKey(child)) childThreads.add(order.threadOf(child));
+
+            if (!childThreads.isEmpty()) {
+                assertTrue("Parent not run by a child thread", childThreads.contains(order.threadOf(comp.getConnections().getID())));
+                parents++;
+            }
+        }
+        assertEquals(parents, sim.getInlineParents());
+
+        executor.shutdown();
+
+    }
+
+    private static boolean allWaiting(final List<Thread> threads) {
+        for (Thread thread : threads)
+            if (thread.getState() != Thread.State.WAITING) return false;
+        return true;
+    }
+
+}
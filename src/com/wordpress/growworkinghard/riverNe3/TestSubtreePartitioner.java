@@ -0,0 +1,93 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.SubtreePartitioner;
+import com.wordpress.growworkinghard.riverNe3.simulation.TreeTopology;
+
+/**
+ * @brief Test of the partition of the tree in sub-tree clusters
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestSubtreePartitioner {
+
+    private static final int LAYERS = 5; //!< layers of the complete binary tree
+
+    @Test
+    public void testClustersAreConnectedSubtrees() {
+
+        HashMap<Key, Component> tree = SampleTrees.riverTree(300, 5L);
+        SubtreePartitioner partition = new SubtreePartitioner(tree, 4.0);
+        TreeTopology topology = partition.getTopology();
+
+        int assignedNodes = 0;
+        for (int c = 0; c < partition.getClusterCount(); c++) {
+            int top = partition.getTop(c);
+            for (int node : partition.getMembers(c)) {
+                assertEquals("Node assigned to the wrong cluster", c, partition.getClusterOf(node));
+                if (node != top)
+                    assertEquals("Cluster not connected", c, partition.getClusterOf(topology.getParent(node)));
+                assignedNodes++;
+            }
+
+            int parent = partition.getClusterParent(c);
+            if (parent >= 0) assertTrue("Clusters not in post-order", parent > c);
+        }
+
+        assertEquals("Each node must be in exactly one cluster", tree.size(), assignedNodes);
+
+    }
+
+    @Test
+    public void testGrainSize() {
+
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS);
+
+        assertEquals(tree.size(), new SubtreePartitioner(tree, 1.0).getClusterCount());
+        assertEquals(1, new SubtreePartitioner(tree, tree.size()).getClusterCount());
+
+        SubtreePartitioner partition = new SubtreePartitioner(tree, 7.0);
+        assertEquals(5, partition.getClusterCount()); // four sub-trees of 7 nodes + the top 3 nodes
+        assertTrue(partition.getImbalance() >= 1.0);
+
+    }
+
+    /**
+     * @brief Build a complete binary tree
+     *
+     * @param[in] layers The number of layers of the tree
+     * @return The tree structure
+     * @see SampleTrees#completeBinaryTree(int)
+     */
+    static HashMap<Key, Component> completeBinaryTree(final int layers) {
+        return SampleTrees.completeBinaryTree(layers);
+    }
+
+}
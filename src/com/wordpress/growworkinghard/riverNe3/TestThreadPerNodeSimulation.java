@@ -0,0 +1,98 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.ThreadPerNodeSimulation;
+
+/**
+ * @brief Test of the simulation with a thread per node
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestThreadPerNodeSimulation {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int PERMITS = 2; //!< nodes in the CPU phase at the same time
+    private static final int SPLITS = 100; //!< leaves split to grow the unbalanced tree
+
+    @Test
+    public void testChildrenBeforeParent() throws InterruptedException {
+
+        ExecutionOrder complete = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, complete);
+        new ThreadPerNodeSimulation(tree, PERMITS).run();
+        complete.assertPostOrder(tree);
+
+        ExecutionOrder river = new ExecutionOrder();
+        HashMap<Key, Component> riverTree = SampleTrees.riverTree(SPLITS, 3L, river);
+        new ThreadPerNodeSimulation(riverTree, PERMITS).run();
+        river.assertPostOrder(riverTree);
+
+    }
+
+    @Test
+    public void testPermitsOnlyBoundTheCpuPhase() throws InterruptedException {
+
+        final HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS);
+        final AtomicInteger reading = new AtomicInteger();
+        final AtomicInteger maxReading = new AtomicInteger();
+        final AtomicInteger computing = new AtomicInteger();
+        final AtomicInteger maxComputing = new AtomicInteger();
+
+        new ThreadPerNodeSimulation(tree, PERMITS) {
+                @Override
+                protected void read(final Component node) {
+                    maxOf(maxReading, reading.incrementAndGet());
+                    try {
+                        Thread.sleep(50); // blocked on I/O
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    reading.decrementAndGet();
+                }
+
+                @Override
+                protected void simulate(final Component comp, final Component parent) {
+                    maxOf(maxComputing, computing.incrementAndGet());
+                    Thread.yield();
+                    computing.decrementAndGet();
+                }
+            }.run();
+
+        assertTrue("Too many nodes in the CPU phase", maxComputing.get() <= PERMITS);
+        assertTrue("The I/O is bounded by the permits", maxReading.get() > PERMITS);
+
+    }
+
+    private static void maxOf(final AtomicInteger max, final int value) {
+        int current;
+        while ((current = max.get()) < value && !max.compareAndSet(current, value));
+    }
+
+}
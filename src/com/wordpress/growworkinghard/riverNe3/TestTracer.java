@@ -0,0 +1,179 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.Simulation;
+import com.wordpress.growworkinghard.riverNe3.simulation.ThreadPerNodeSimulation;
+import com.wordpress.growworkinghard.riverNe3.simulation.Tracer;
+
+/**
+ * @brief Test of the tracer of the executions
+ *
+ * @description The events are recorded by the hook of
+ *              Simulation#simulate(final Component, final Component) and
+ *              read back from the Chrome trace.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestTracer {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int SPLITS = 300; //!< splits of the river tree
+    private static final int WRITERS = 8; //!< threads recording at the same time
+    private static final int EVENTS = 20000; //!< events recorded by each writer
+
+    private static final Pattern THREAD = Pattern.compile("\\{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":(\\d+),\"args\":\\{\"name\":\"([^\"]*)\"\\}\\}");
+    private static final Pattern EVENT = Pattern.compile("\\{\"name\":\"(\\d+)\",\"cat\":\"(\\w+)\",\"ph\":\"X\",\"pid\":1,\"tid\":(\\d+),\"ts\":([-0-9.E]+),\"dur\":([-0-9.E]+),\"args\":\\{\"key\":\"([^\"]+)\",\"layer\":(\\d+)\\}\\}");
+
+    @Test
+    public void testEventOfEachNode() throws InterruptedException, IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ExecutionOrder order = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.riverTree(SPLITS, 17L, order);
+
+        RunSimulations sim = new RunSimulations(tree, executor, 4);
+        Tracer tracer = new Tracer(tree.size());
+        sim.setTracer(tracer);
+        sim.run();
+        executor.shutdown();
+
+        order.assertPostOrder(tree);
+        assertEquals(tree.size(), tracer.getEventsCount());
+        assertEquals(0, tracer.getDroppedEvents());
+
+        // each node once, on the thread which simulated it
+        HashMap<Key, String> threads = new HashMap<Key, String>();
+        for (String[] event : readTrace(tracer)) {
+            Key key = new Key(event[1]);
+            assertEquals(tree.get(key).getClass().getSuperclass().getSimpleName(), event[2]); // anonymous recorded nodes
+            assertEquals(tree.get(key).getLayer().intValue(), Integer.parseInt(event[4]));
+            assertTrue(Double.parseDouble(event[3]) >= 0.0);
+            threads.put(key, event[0]);
+        }
+        for (Key key : tree.keySet())
+            assertEquals(order.threadOf(key), threads.get(key));
+
+    }
+
+    @Test
+    public void testTraceBoundedByRings() throws InterruptedException {
+
+        ExecutionOrder order = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(LAYERS, order);
+        final int capacity = 8; // fewer events than nodes for each ring
+
+        ThreadPerNodeSimulation sim = new ThreadPerNodeSimulation(tree, 2);
+        Tracer tracer = new Tracer(capacity);
+        sim.setTracer(tracer);
+        sim.run();
+
+        // a thread per node, but the events are kept in the shared rings only
+        order.assertPostOrder(tree);
+        int rings = Runtime.getRuntime().availableProcessors();
+        assertTrue(tracer.getEventsCount() <= (long) rings * capacity);
+        assertEquals(tree.size(), tracer.getEventsCount() + tracer.getDroppedEvents());
+
+    }
+
+    @Test
+    public void testWraparoundKeepsWholeEvents() throws InterruptedException, IOException {
+
+        // each writer simulates its own leaf over and over
+        final HashMap<Key, Component> tree = SampleTrees.completeBinaryTree(4, new ExecutionOrder());
+        final Tracer tracer = new Tracer(4); // the rings wrap around many times
+
+        Simulation sim = new Simulation() {
+                public void run() throws InterruptedException {
+                    List<Thread> writers = new ArrayList<Thread>();
+                    for (int w = 0; w < WRITERS; w++) {
+                        final Component leaf = tree.get(new Key((double) (WRITERS + w)));
+                        writers.add(new Thread(new Runnable() {
+                                public void run() {
+                                    for (int i = 0; i < EVENTS; i++) simulate(leaf, null);
+                                }
+                            }, "writer-" + (WRITERS + w)));
+                    }
+                    for (Thread writer : writers) writer.start();
+                    for (Thread writer : writers) writer.join();
+                }
+            };
+        sim.setTracer(tracer);
+        sim.run();
+
+        assertEquals((long) WRITERS * EVENTS, tracer.getEventsCount() + tracer.getDroppedEvents());
+
+        // the fields of a kept event come from the same execution
+        List<String[]> events = readTrace(tracer);
+        assertEquals(tracer.getEventsCount(), events.size());
+        for (String[] event : events) {
+            long key = (long) new Key(event[1]).getDouble().doubleValue();
+            assertEquals("writer-" + key, event[0]);
+            assertTrue(Double.parseDouble(event[3]) >= 0.0);
+        }
+
+    }
+
+    /**
+     * @brief Read the events of the Chrome trace of a tracer
+     *
+     * @param[in] tracer The tracer
+     * @return The thread name, the key, the type, the duration and the layer
+     *         of each event
+     * @throws IOException
+     */
+    private static List<String[]> readTrace(final Tracer tracer) throws IOException {
+        File file = File.createTempFile("riverNe3", ".json");
+        file.deleteOnExit();
+        tracer.writeChromeTrace(file.getPath());
+
+        Map<String, String> names = new HashMap<String, String>();
+        List<String[]> events = new ArrayList<String[]>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            Matcher thread = THREAD.matcher(line);
+            Matcher event = EVENT.matcher(line);
+            if (thread.find()) names.put(thread.group(1), thread.group(2));
+            else if (event.find())
+                events.add(new String[] {names.get(event.group(3)), event.group(6), event.group(2), event.group(5), event.group(7)});
+        }
+        return events;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.Leaf;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Basin;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.River;
+import com.wordpress.growworkinghard.riverNe3.composite.key.BinaryConnections;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.simulation.WavefrontSimulation;
+
+/**
+ * @brief Test of the simulation layer by layer
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestWavefrontSimulation {
+
+    private static final int LAYERS = 6; //!< layers of the complete binary tree
+    private static final int SPLITS = 300; //!< splits of the river tree
+
+    @Test
+    public void testLayersInOrder() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final HashMap<Key, Component> tree = TestSubtreePartitioner.completeBinaryTree(LAYERS);
+        final ConcurrentHashMap<Key, Integer> order = new ConcurrentHashMap<Key, Integer>();
+        final AtomicInteger counter = new AtomicInteger();
+        final AtomicInteger repeated = new AtomicInteger();
+
+        WavefrontSimulation sim = new WavefrontSimulation(tree, executor, 4) {
+                @Override
+                protected void simulate(final Component comp, final Component parent) {
+                    if (order.put(comp.getConnections().getID(), counter.getAndIncrement()) != null)
+                        repeated.incrementAndGet();
+                }
+            };
+        sim.run();
+
+        assertEquals("Node simulated more than once", 0, repeated.get());
+        assertEquals(tree.size(), order.size());
+        assertEquals(LAYERS, sim.getLayersCount());
+
+        // a node starts only when the whole deeper layer is finished
+        for (Component comp : tree.values())
+            for (Component other : tree.values())
+                if (other.getLayer() > comp.getLayer())
+                    assertTrue(order.get(other.getConnections().getID()) < order.get(comp.getConnections().getID()));
+
+        for (int layer = 1; layer <= LAYERS; layer++)
+            assertEquals(1 << (layer - 1), sim.getLayerSize(layer));
+
+        executor.shutdown();
+
+    }
+
+    @Test
+    public void testRiverTreeInLayers() throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        assertLayersInOrder(executor, 4);
+        executor.shutdown();
+
+    }
+
+    @Test(timeout = 60000)
+    public void testMoreWorkersThanThreads() throws InterruptedException {
+
+        // the slices of a layer must not wait for each other to be running
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        assertLayersInOrder(executor, 4);
+        executor.shutdown();
+
+    }
+
+    private static void assertLayersInOrder(final ExecutorService executor, final int workers) throws InterruptedException {
+
+        ExecutionOrder order = new ExecutionOrder();
+        HashMap<Key, Component> tree = SampleTrees.riverTree(SPLITS, 13L, order);
+
+        new WavefrontSimulation(tree, executor, workers).run();
+
+        order.assertPostOrder(tree);
+        for (Component comp : tree.values())
+            for (Component other : tree.values())
+                if (other.getLayer() > comp.getLayer())
+                    assertTrue(order.startOf(other.getConnections().getID()) < order.startOf(comp.getConnections().getID()));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLayersStartFromOne() {
+
+        HashMap<Key, Component> tree = new HashMap<Key, Component>();
+        Coordinate2D point = new Coordinate2D(0.0, 0.0);
+        Key key = new Key(1.0);
+        tree.put(key, new Leaf(new BinaryConnections(key, null, null), 1, new Basin(new River(point, point), null)) {
+                @Override
+                public synchronized Integer getLayer() {
+                    return 0; // numbered from 0
+                }
+            });
+
+        new WavefrontSimulation(tree, Executors.newSingleThreadExecutor(), 1);
+
+    }
+
+}
@@ -23,6 +23,7 @@ import java.util.List;
 import org.geotools.graph.util.geom.Coordinate2D;
 
 import com.google.common.collect.TreeTraverser;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Entity;
 import com.wordpress.growworkinghard.riverNe3.composite.key.Connections;
 import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
 
@@ -48,8 +49,10 @@ public abstract class Component {
      *              the computation of their simulation is finished.
      *
      * @param[in] child The key of the child whose computation is finished
+     * @retval TRUE if this notification made the node ready for the simulation
+     * @retval FALSE otherwise
      */
-    public void notify(final Key child) {
+    public boolean notify(final Key child) {
         throw new UnsupportedOperationException("Method not implemented for class LEAF");
     }
 
@@ -132,6 +135,16 @@ public abstract class Component {
      */
     abstract public Coordinate2D getEndPoint();
 
+    /**
+     * @brief Get the entity represented by the node
+     *
+     * @description The entity (e.g. a Basin or a Hydrometer) carries the data
+     *              of the node which are read by the simulation kernels.
+     *
+     * @return The entity of the node
+     */
+    abstract public Entity getEntity();
+
     /**
      * @brief Set the traverser of the tree
      *
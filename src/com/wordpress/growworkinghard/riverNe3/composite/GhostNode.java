@@ -18,7 +18,6 @@
  */
 package com.wordpress.growworkinghard.riverNe3.composite;
 
-import java.util.HashMap;
 import java.util.List;
 
 import org.geotools.graph.util.geom.Coordinate2D;
@@ -48,6 +47,9 @@ import net.jcip.annotations.ThreadSafe;
  *              <ul>
  *              <li>Each state is guarded by the <strong>intrinsic lock</strong>
  *              ;</li>
+ *              <li>The flags for the simulation are <strong>lock-free</strong>
+ *              (see ReadyFlags), so the children notify the node and the
+ *              scheduler polls it without taking the lock;</li>
  *              <li>Each method is <strong>synchronized</strong> in order to
  *              deny stale data if a two threads simultaneously call setter and
  *              getter methods;</li>
@@ -69,8 +71,7 @@ public class GhostNode extends Component {
     @GuardedBy("this") private Integer layer; //!< layer in the tree in which this node is located
     @GuardedBy("this") private Entity entity; //!<
     @GuardedBy("this") private TreeTraverser<Component> traverser; //!< traverser object
-    @GuardedBy("this") private final HashMap<Key, Boolean> readyForSim
-        = new HashMap<Key, Boolean>(); //!< <code>HashMap</code> of flags for start sim
+    private final ReadyFlags readyForSim = new ReadyFlags(); //!< lock-free flags for start sim
 
     /**
      * @brief Constructor
@@ -91,10 +92,12 @@ public class GhostNode extends Component {
      *              the computation of their simulation is finished.
      *
      * @param[in] child The key of the child whose computation is finished
+     * @retval TRUE if this notification made the node ready for the simulation
+     * @retval FALSE otherwise
      */
     @Override
-    public synchronized void notify(final Key child) {
-        readyForSim.replace(child, true);
+    public boolean notify(final Key child) {
+        return readyForSim.clear(child);
     }
 
     /**
@@ -102,8 +105,8 @@ public class GhostNode extends Component {
      *
      * @see Component#isReadyForSimulation()
      */
-    public synchronized boolean isReadyForSimulation() {
-        return (!readyForSim.values().contains(false)) ? true : false;
+    public boolean isReadyForSimulation() {
+        return readyForSim.isReady();
     }
 
     /**
@@ -185,6 +188,15 @@ public class GhostNode extends Component {
         return entity.getEndPoint();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see Component#getEntity()
+     */
+    public synchronized Entity getEntity() {
+        return entity;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -295,11 +307,8 @@ public class GhostNode extends Component {
      * @see Component#allocateSimulationFlags()
      */
     protected void allocateSimulationFlags() {
-        readyForSim.clear();
-
         if (connKeys.getNumberNonNullChildren() != 0) {
-            for (Key childKey : connKeys.getChildren())
-                readyForSim.putIfAbsent(childKey, false);
+            readyForSim.reset(connKeys.getChildren());
         } else {
             String message = this.getClass().getSimpleName();
             message += " has no children. This is not allowed,";
@@ -79,7 +79,7 @@ public class Leaf extends Component {
      *
      * @see Component#isReadyForSimulation()
      */
-    public synchronized boolean isReadyForSimulation() {
+    public boolean isReadyForSimulation() {
         return true;
     }
 
@@ -161,6 +161,15 @@ public class Leaf extends Component {
         return entity.getEndPoint();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see Component#getEntity()
+     */
+    public synchronized Entity getEntity() {
+        return entity;
+    }
+
     /**
      * {@inheritDoc}
      *
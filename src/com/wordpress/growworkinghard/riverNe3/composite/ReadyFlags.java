@@ -0,0 +1,93 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.composite;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Lock-free flags of the children whose simulation is not finished
+ *
+ * @description The flags of a node are a bit mask in an
+ *              <tt>AtomicInteger</tt>, one bit per child (two for a binary
+ *              tree), set while the simulation of the child is not finished.
+ *              A child clears its bit with a CAS loop and the thread clearing
+ *              the last bit is told so, while checking if the node is ready is
+ *              a single volatile read, with no lock and no scan.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+final class ReadyFlags {
+
+    private final AtomicInteger pending = new AtomicInteger(); //!< a bit for each child not simulated yet
+    private volatile Key[] children = new Key[0]; //!< key of the child of each bit
+
+    /**
+     * @brief Set a flag for each child
+     *
+     * @param[in] childKeys The keys of the children of the node
+     */
+    void reset(final List<Key> childKeys) {
+        if (childKeys.size() >= Integer.SIZE)
+            throw new IllegalArgumentException("Too many children: " + childKeys.size());
+
+        children = childKeys.toArray(new Key[childKeys.size()]);
+        pending.set((1 << children.length) - 1);
+    }
+
+    /**
+     * @brief Clear the flag of a child
+     *
+     * @param[in] child The key of the child whose simulation is finished
+     * @retval TRUE if this call made the node ready for the simulation
+     * @retval FALSE if some children are still missing, or the key is not a
+     *         child, or the child had already been notified
+     */
+    boolean clear(final Key child) {
+        final Key[] keys = children;
+
+        int bit = 0;
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i].equals(child)) bit = 1 << i;
+        if (bit == 0) return false;
+
+        while (true) {
+            final int current = pending.get();
+            if ((current & bit) == 0) return false;
+            if (pending.compareAndSet(current, current & ~bit)) return (current & ~bit) == 0;
+        }
+    }
+
+    /**
+     * @retval TRUE if all the children have been notified
+     * @retval FALSE otherwise
+     */
+    boolean isReady() {
+        return pending.get() == 0;
+    }
+
+}
@@ -209,7 +209,7 @@ public class Key {
 
         String hexadecimal = "";
         while (Math.floor(decimalVal) > 0) {
-            int digit = (int) decimalVal % 16;
+            int digit = (int) (Math.floor(decimalVal) % 16);
             hexadecimal = DIGITS.charAt(digit) + hexadecimal;
             decimalVal = decimalVal / 16;
         }
@@ -0,0 +1,49 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.dataReader;
+
+import java.io.IOException;
+
+/**
+ * @brief Interface for data reading classes which stream the records
+ *
+ * @description Instead of collecting the whole file in a <tt>HashMap</tt>,
+ *              each record is handed to a GeometrySink as soon as it has been
+ *              read, so that the consumer can process the records while the
+ *              file is still being read, and no copy of the whole file is
+ *              kept by the reader.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public interface DataStreaming {
+
+    /**
+     * @brief Processing of the input file, one record at a time
+     *
+     * @param[in] sink The consumer of the records
+     * @exception IOException if it is not possible to open the input file
+     * @exception InterruptedException if interrupted while handing a record to
+     *            the sink
+     */
+    public void fileProcessing(final GeometrySink sink) throws IOException, InterruptedException;
+
+}
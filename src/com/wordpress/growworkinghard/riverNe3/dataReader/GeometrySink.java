@@ -0,0 +1,43 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.dataReader;
+
+import com.wordpress.growworkinghard.riverNe3.geometry.Geometry;
+
+/**
+ * @brief Interface for the consumers of a stream of input data
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public interface GeometrySink {
+
+    /**
+     * @brief Consume a record as soon as it has been read
+     *
+     * @param[in] key The key of the record, in ascending order of reading
+     * @param[in] geometry The <tt>Geometry</tt> object of the record
+     * @exception InterruptedException if interrupted while waiting to consume
+     *            the record
+     */
+    public void put(final int key, final Geometry geometry) throws InterruptedException;
+
+}
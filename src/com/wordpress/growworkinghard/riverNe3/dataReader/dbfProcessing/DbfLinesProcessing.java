@@ -27,6 +27,8 @@ import java.util.Vector;
 import org.geotools.data.shapefile.dbf.DbaseFileReader;
 
 import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.dataReader.DataStreaming;
+import com.wordpress.growworkinghard.riverNe3.dataReader.GeometrySink;
 import com.wordpress.growworkinghard.riverNe3.geometry.Geometry;
 import com.wordpress.growworkinghard.riverNe3.geometry.Line;
 
@@ -43,6 +45,11 @@ import com.wordpress.growworkinghard.riverNe3.geometry.Line;
  *              implementation of a cache where temporary store the complete
  *              file and then parsing that structure with many threads.
  *              </p>
+ *              <p>
+ *              The file can also be streamed to a GeometrySink, one
+ *              <tt>Line</tt> at a time, without filling the
+ *              <tt>HashMap</tt>.
+ *              </p>
  *
  * @todo Implement a cache, in order to parse the file in multithreading
  * @todo Verify if it is possibile to change from HashMap to List for inputData
@@ -52,7 +59,7 @@ import com.wordpress.growworkinghard.riverNe3.geometry.Line;
  * @date October 13, 2015
  * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
  */
-public class DbfLinesProcessing extends DbfProcessing {
+public class DbfLinesProcessing extends DbfProcessing implements DataStreaming {
 
     private final HashMap<Integer, Geometry> inputData; //!< parsed data of the <code>.dbf</code>
     private final String filePath; //!< path of the file to parse
@@ -83,15 +90,24 @@ public class DbfLinesProcessing extends DbfProcessing {
         try {
 
             FileInputStream inputFile = new FileInputStream(filePath);
-            DbaseFileReader dbfReader = new DbaseFileReader(inputFile.getChannel(), // input file
-                                                            false, // memory mapped buffer
-                                                            Charset.defaultCharset()); // charset
+            DbaseFileReader dbfReader = null;
+
+            try {
 
-            Vector<Integer> columnIndices = headerProcessing(dbfReader, columnNames);
-            bodyProcessing(dbfReader, columnIndices);
+                dbfReader = new DbaseFileReader(inputFile.getChannel(), // input file
+                                                false, // memory mapped buffer
+                                                Charset.defaultCharset()); // charset
 
-            dbfReader.close();
-            inputFile.close();
+                Vector<Integer> columnIndices = headerProcessing(dbfReader, columnNames);
+                bodyProcessing(dbfReader, columnIndices);
+
+            } finally { // also when the parsing fails
+                try {
+                    if (dbfReader != null) dbfReader.close();
+                } finally {
+                    inputFile.close();
+                }
+            }
 
         } catch (IOException exception) {
             throw new IOException(exception.getCause());
@@ -101,6 +117,41 @@ public class DbfLinesProcessing extends DbfProcessing {
         return inputData;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.wordpress.growworkinghard.riverNe3.dataReader.DataStreaming#fileProcessing(GeometrySink)
+     */
+    public void fileProcessing(final GeometrySink sink) throws IOException, InterruptedException {
+
+        try {
+
+            FileInputStream inputFile = new FileInputStream(filePath);
+            DbaseFileReader dbfReader = null;
+
+            try {
+
+                dbfReader = new DbaseFileReader(inputFile.getChannel(), // input file
+                                                false, // memory mapped buffer
+                                                Charset.defaultCharset()); // charset
+
+                Vector<Integer> columnIndices = headerProcessing(dbfReader, columnNames);
+                bodyStreaming(dbfReader, columnIndices, sink);
+
+            } finally { // also when the parsing fails or the sink is interrupted
+                try {
+                    if (dbfReader != null) dbfReader.close();
+                } finally {
+                    inputFile.close();
+                }
+            }
+
+        } catch (IOException exception) {
+            throw new IOException(exception.getCause());
+        }
+
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -114,40 +165,41 @@ public class DbfLinesProcessing extends DbfProcessing {
 
             try {
 
-                Geometry tmpLine = new Line();
-                double x_start = 0.0, y_start = 0.0, x_end = 0.0, y_end = 0.0;
-
-                Object[] fields = dbfReader.readEntry();
-
-                for (int i = 0; i < columnIndices.size(); i++) {
-
-                    int index = columnIndices.get(i);
-
-                    switch (i)
-                    {
-                        case 0: // analizing of the Pfafstetter column
-                            if (isRootNode(fields[index])) setRootNode(tmpLine);
-                            break;
-                        case 1: // x coordinate of the starting point
-                            x_start = parseDoubleField(fields[index]);
-                            break;
-                        case 2: // y coordinate of the starting point
-                            y_start = parseDoubleField(fields[index]);
-                            break;
-                        case 3: // x coordinate of the ending point
-                            x_end = parseDoubleField(fields[index]);
-                            break;
-                        case 4: // y coordinate of the ending point
-                            y_end = parseDoubleField(fields[index]);
-                            break;
-                    }
+                inputData.put(hashMapKey, lineProcessing(dbfReader.readEntry(), columnIndices));
+                hashMapKey++;
 
-                }
+            } catch (IOException exception) {
+                throw new IOException(exception.getCause());
+            }
 
-                tmpLine.setStartPoint(x_start, y_start);
-                tmpLine.setEndPoint(x_end, y_end);
+        }
+
+    }
 
-                inputData.put(hashMapKey, tmpLine);
+    /**
+     * @brief Processing of each line of the <code>.dbf</code> file, handing it
+     *        to a sink
+     *
+     * @description The records are not stored: each <tt>Line</tt> is handed to
+     *              the sink as soon as it has been read, with the same key it
+     *              would have in the <tt>HashMap</tt> of
+     *              DbfLinesProcessing#fileProcessing().
+     *
+     * @param[in] dbfReader The object containing the <code>.dbf</code> file
+     * @param[in] columnIndices The indices of the columns to parse
+     * @param[in] sink The consumer of the records
+     * @exception IOException If it is not possible to read the input file
+     * @exception InterruptedException If interrupted while handing a record
+     */
+    private void bodyStreaming(final DbaseFileReader dbfReader, final Vector<Integer> columnIndices, final GeometrySink sink) throws IOException, InterruptedException {
+
+        int hashMapKey = 1;
+
+        while(dbfReader.hasNext()) {
+
+            try {
+
+                sink.put(hashMapKey, lineProcessing(dbfReader.readEntry(), columnIndices));
                 hashMapKey++;
 
             } catch (IOException exception) {
@@ -158,6 +210,51 @@ public class DbfLinesProcessing extends DbfProcessing {
 
     }
 
+    /**
+     * @brief Conversion of a record of the <code>.dbf</code> file in a
+     *        <tt>Line</tt>
+     *
+     * @param[in] fields The fields of the record
+     * @param[in] columnIndices The indices of the columns to parse
+     * @return The <tt>Line</tt> of the record
+     */
+    private Geometry lineProcessing(final Object[] fields, final Vector<Integer> columnIndices) {
+
+        Geometry tmpLine = new Line();
+        double x_start = 0.0, y_start = 0.0, x_end = 0.0, y_end = 0.0;
+
+        for (int i = 0; i < columnIndices.size(); i++) {
+
+            int index = columnIndices.get(i);
+
+            switch (i)
+            {
+                case 0: // analizing of the Pfafstetter column
+                    if (isRootNode(fields[index])) setRootNode(tmpLine);
+                    break;
+                case 1: // x coordinate of the starting point
+                    x_start = parseDoubleField(fields[index]);
+                    break;
+                case 2: // y coordinate of the starting point
+                    y_start = parseDoubleField(fields[index]);
+                    break;
+                case 3: // x coordinate of the ending point
+                    x_end = parseDoubleField(fields[index]);
+                    break;
+                case 4: // y coordinate of the ending point
+                    y_end = parseDoubleField(fields[index]);
+                    break;
+            }
+
+        }
+
+        tmpLine.setStartPoint(x_start, y_start);
+        tmpLine.setEndPoint(x_end, y_end);
+
+        return tmpLine;
+
+    }
+
     /**
      * {@inheritDoc}
      *
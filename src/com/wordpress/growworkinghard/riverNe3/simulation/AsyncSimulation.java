@@ -0,0 +1,184 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.LocalNode;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Asynchronous simulation as a graph of <tt>CompletableFuture</tt>
+ *
+ * @description <code>start()</code> turns the tree into a graph of futures:
+ *              the future of a leaf is submitted immediately, the future of a
+ *              node runs on the executor when the futures of all its children
+ *              have completed (<code>allOf</code>). No thread ever waits for
+ *              a child: the simulation of a node is triggered by the
+ *              completion of its last child.
+ *              <p>
+ *              Besides the future of the whole tree, the caller can get the
+ *              future of any node, e.g. of the LocalNode of a hydrometer, and
+ *              use its result as soon as its sub-tree is finished, without
+ *              waiting for the whole basin. If the simulation of a node fails,
+ *              its future and the futures of all its ancestors complete
+ *              exceptionally.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class AsyncSimulation extends Simulation {
+
+    private final TreeTopology topology; //!< array view of the tree
+    private final Executor executor; //!< executor of the simulations
+    private volatile CompletableFuture<?>[] futures; //!< future of each node of the last start
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] executor The executor of the simulations
+     */
+    public AsyncSimulation(final HashMap<Key, Component> tree, final Executor executor) {
+        validateTree(tree); // precondition
+        if (executor == null) throw new NullPointerException("The executor cannot be null.");
+
+        this.topology = new TreeTopology(tree);
+        this.executor = executor;
+    }
+
+    /**
+     * @brief Start the simulation without waiting for it
+     *
+     * @return The future completed when every node has been simulated
+     */
+    public synchronized CompletableFuture<Void> start() {
+        final CompletableFuture<?>[] nodes = new CompletableFuture<?>[topology.size()];
+
+        for (int i = 0; i < topology.size(); i++) { // post-order: children come first
+            final int left = topology.getLeft(i);
+            final int right = topology.getRight(i);
+            final Runnable task = new NodeSimulation(i);
+
+            if (left >= 0 && right >= 0) nodes[i] = CompletableFuture.allOf(nodes[left], nodes[right]).thenRunAsync(task, executor);
+            else if (left >= 0) nodes[i] = nodes[left].thenRunAsync(task, executor);
+            else if (right >= 0) nodes[i] = nodes[right].thenRunAsync(task, executor);
+            else nodes[i] = CompletableFuture.runAsync(task, executor);
+        }
+
+        futures = nodes;
+
+        final int[] roots = topology.getRoots();
+        final CompletableFuture<?>[] rootFutures = new CompletableFuture<?>[roots.length];
+        for (int r = 0; r < roots.length; r++) rootFutures[r] = nodes[roots[r]];
+
+        return CompletableFuture.allOf(rootFutures);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @description Starts the simulation and waits for it in the calling
+     *              thread.
+     *
+     * @see Simulation#run()
+     */
+    public void run() throws InterruptedException {
+        try {
+            start().join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException) throw (RuntimeException) exception.getCause();
+            throw exception;
+        }
+    }
+
+    /**
+     * @brief The future of a node
+     *
+     * @param[in] key The key of the node
+     * @return A future completed when the node has been simulated; completing
+     *         it does not affect the simulation
+     */
+    public CompletableFuture<Void> getFuture(final Key key) {
+        final CompletableFuture<?>[] nodes = futures;
+        if (nodes == null) throw new IllegalStateException("The simulation has not been started");
+
+        final int index = topology.indexOf(key);
+        if (index < 0) throw new IllegalArgumentException("Key " + key.getString() + " not in the tree");
+
+        return readOnly(nodes[index]);
+    }
+
+    /**
+     * @return The futures of the local nodes (e.g. hydrometers), by key
+     */
+    public Map<Key, CompletableFuture<Void>> getLocalNodeFutures() {
+        final HashMap<Key, CompletableFuture<Void>> locals = new HashMap<Key, CompletableFuture<Void>>();
+
+        for (int i = 0; i < topology.size(); i++)
+            if (topology.getComponent(i) instanceof LocalNode) {
+                final Key key = topology.getComponent(i).getConnections().getID();
+                locals.put(key, getFuture(key));
+            }
+
+        return locals;
+    }
+
+    /**
+     * @brief A dependent future, so the callers cannot complete the futures of
+     *        the graph
+     */
+    private static CompletableFuture<Void> readOnly(final CompletableFuture<?> future) {
+        final CompletableFuture<Void> view = new CompletableFuture<Void>();
+        future.whenComplete(new BiConsumer<Object, Throwable>() {
+                public void accept(final Object result, final Throwable failure) {
+                    if (failure != null) view.completeExceptionally(failure);
+                    else view.complete(null);
+                }
+            });
+
+        return view;
+    }
+
+    private class NodeSimulation implements Runnable {
+
+        private final int node;
+
+        NodeSimulation(final int node) { this.node = node; }
+
+        public void run() {
+            final int parent = topology.getParent(node);
+            simulate(topology.getComponent(node), (parent >= 0) ? topology.getComponent(parent) : null);
+        }
+
+    }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Run a multi time-step simulation in blocks of time-steps
+ *
+ * @description When a kernel does only microseconds of work per time-step,
+ *              scheduling each node at each step costs more than the
+ *              simulation. In this mode each task simulates a node over a
+ *              <em>block</em> of \f$B\f$ time-steps with a
+ *              SimulationKernel, so the scheduling and synchronization costs
+ *              are divided by \f$B\f$.
+ *              <p>
+ *              Each node owns a single output buffer of \f$B\f$
+ *              <code>double</code>, allocated once, and the kernel of the
+ *              parent reads the buffers of its children directly. The blocks
+ *              are scheduled as the steps of a PipelinedSimulation with a
+ *              lookahead window of one block: a child can start a block only
+ *              after its parent has consumed the previous one, thus a single
+ *              buffer per node is enough while the leaves still run ahead of
+ *              the outlet.
+ *              </p>
+ *              <p>
+ *              Long runs can be checkpointed every \f$C\f$ blocks. When a
+ *              node completes a multiple of \f$C\f$ blocks, the thread
+ *              simulating it copies the state of the node from the
+ *              StatefulKernel: this short copy is the only stall of the
+ *              workers. When all the nodes have passed the boundary, the
+ *              Checkpoint is written by a background thread. A new simulation
+ *              can resume from the last checkpoint written.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class BlockedSimulation extends PipelinedSimulation {
+
+    private final SimulationKernel kernel; //!< kernel of the nodes
+    private final int totalSteps; //!< number of time-steps of the simulation
+    private final int blockSize; //!< number of time-steps of each block
+    private final double[][] outputs; //!< output buffer of each node
+    private final double[][][] inputs; //!< output buffers of the children of each node
+    private volatile long elapsedTime; //!< duration of the last run, in nanoseconds
+    private final ConcurrentHashMap<Integer, Snapshot> snapshots; //!< checkpoints still collecting states
+    private final AtomicReference<IOException> writeFailure; //!< first failure of the checkpoint writer
+    private volatile String checkpointPath; //!< path of the checkpoint file
+    private volatile int checkpointInterval; //!< blocks between two checkpoints, 0 if disabled
+    private volatile int lastCheckpoint; //!< block of the last checkpoint written or resumed
+    private volatile ExecutorService writer; //!< background writer of the checkpoints
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] executor The main executor service
+     * @param[in] kernel The kernel of the nodes
+     * @param[in] timeSteps The number of time-steps to simulate
+     * @param[in] blockSize The number of time-steps simulated by each task
+     */
+    public BlockedSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final SimulationKernel kernel, final int timeSteps, final int blockSize) {
+        super(tree, executor, blocksOf(timeSteps, blockSize), 1);
+        if (kernel == null) throw new NullPointerException("The kernel cannot be null.");
+
+        this.kernel = kernel;
+        this.totalSteps = timeSteps;
+        this.blockSize = blockSize;
+        this.snapshots = new ConcurrentHashMap<Integer, Snapshot>();
+        this.writeFailure = new AtomicReference<IOException>();
+        this.lastCheckpoint = -1;
+
+        final TreeTopology topology = getTopology();
+        this.outputs = new double[topology.size()][blockSize];
+        this.inputs = new double[topology.size()][][];
+        for (int i = 0; i < topology.size(); i++) {
+            int left = topology.getLeft(i);
+            int right = topology.getRight(i);
+
+            if (left >= 0 && right >= 0) inputs[i] = new double[][] {outputs[left], outputs[right]};
+            else if (left >= 0) inputs[i] = new double[][] {outputs[left]};
+            else if (right >= 0) inputs[i] = new double[][] {outputs[right]};
+            else inputs[i] = new double[0][];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    @Override
+    public void run() throws InterruptedException {
+        final long start = System.nanoTime();
+        if (checkpointInterval > 0) writer = newWriter(); // a new writer for each run
+        try {
+            super.run();
+        } finally {
+            elapsedTime = System.nanoTime() - start;
+            if (writer != null) { // the last checkpoint must be on disk
+                writer.shutdown();
+                writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                writer = null;
+            }
+        }
+
+        if (writeFailure.get() != null) throw new IllegalStateException("Checkpoint not written", writeFailure.get());
+    }
+
+    /**
+     * @brief Enable the periodic checkpoints
+     *
+     * @description Must be called before <code>run()</code>. The checkpoint
+     *              file is replaced at each checkpoint.
+     *
+     * @param[in] filePath The path of the checkpoint file
+     * @param[in] interval The number of blocks between two checkpoints
+     */
+    public synchronized void enableCheckpoints(final String filePath, final int interval) {
+        if (filePath == null) throw new NullPointerException("The checkpoint path cannot be null.");
+        if (interval <= 0) throw new IllegalArgumentException("The checkpoint interval must be positive.");
+
+        this.checkpointPath = filePath;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * @brief Resume the simulation from a checkpoint
+     *
+     * @description Restores the state of each node and skips the blocks
+     *              already simulated. Must be called before <code>run()</code>.
+     *
+     * @param[in] filePath The path of the checkpoint file
+     * @return The first block that will be simulated
+     * @throws IOException if the checkpoint cannot be read
+     */
+    public synchronized int resume(final String filePath) throws IOException {
+        final Checkpoint checkpoint = Checkpoint.read(filePath);
+        final TreeTopology topology = getTopology();
+
+        if (checkpoint.getTimeSteps() != totalSteps || checkpoint.getBlockSize() != blockSize)
+            throw new IllegalArgumentException("The checkpoint belongs to a simulation with different time-steps");
+        if (checkpoint.size() != topology.size())
+            throw new IllegalArgumentException("The checkpoint belongs to a different tree");
+
+        for (int i = 0; i < checkpoint.size(); i++) {
+            int index = topology.indexOf(checkpoint.getKey(i));
+            if (index < 0) throw new IllegalArgumentException("Key " + checkpoint.getKey(i).getString() + " not in the tree");
+
+            double[] state = checkpoint.getState(i);
+            if (kernel instanceof StatefulKernel) ((StatefulKernel) kernel).restoreState(topology.getComponent(index), state);
+            else if (state.length > 0) throw new IllegalArgumentException("The kernel cannot restore a state");
+        }
+
+        startFrom(checkpoint.getBlock());
+        lastCheckpoint = checkpoint.getBlock();
+        return checkpoint.getBlock();
+    }
+
+    /**
+     * @return The block of the last checkpoint written or resumed, -1 if none
+     */
+    public int getLastCheckpoint() {
+        return lastCheckpoint;
+    }
+
+    /**
+     * @return The number of time-steps simulated by each task
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return The number of time-steps of the simulation
+     */
+    @Override
+    public int getTimeSteps() {
+        return totalSteps;
+    }
+
+    /**
+     * @return The number of blocks of time-steps
+     */
+    public int getBlocksCount() {
+        return super.getTimeSteps();
+    }
+
+    /**
+     * @return The duration of the last run, in nanoseconds
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * @brief The output of the last block of a node
+     *
+     * @param[in] key The key of the node
+     * @return A copy of the output buffer of the node
+     */
+    public double[] getOutput(final Key key) {
+        int index = getTopology().indexOf(key);
+        if (index < 0) throw new IllegalArgumentException("Key " + key.getString() + " not in the tree");
+
+        int lastBlock = (getBlocksCount() > 0) ? totalSteps - (getBlocksCount() - 1) * blockSize : 0;
+        return Arrays.copyOf(outputs[index], lastBlock);
+    }
+
+    /**
+     * @brief Simply overriding of the <code>toString</code> method
+     *
+     * @return The report of the last run
+     */
+    @Override
+    public String toString() {
+        String tmp = this.getClass().getSimpleName();
+        tmp += " ==> nodes = " + getTopology().size();
+        tmp += " - time-steps = " + totalSteps;
+        tmp += " - block size = " + blockSize;
+        tmp += " - blocks = " + getBlocksCount();
+        tmp += " - elapsed = " + elapsedTime / 1e6 + " ms";
+        if (lastCheckpoint >= 0) tmp += " - last checkpoint = block " + lastCheckpoint;
+
+        return tmp;
+    }
+
+    /**
+     * @brief Simulate a block of time-steps of a node
+     *
+     * @param[in] node The index of the node in the topology
+     * @param[in] block The block, starting from 0
+     */
+    @Override
+    protected void runStep(final int node, final int block) {
+        final int firstStep = block * blockSize;
+        final int steps = Math.min(blockSize, totalSteps - firstStep);
+
+        compute(kernel, getTopology().getComponent(node), firstStep, steps, inputs[node], outputs[node]);
+
+        final int interval = checkpointInterval;
+        if (interval > 0 && (block + 1) % interval == 0 && block + 1 < getBlocksCount())
+            snapshot(node, block + 1);
+    }
+
+    /**
+     * @brief Save the state of a node at a block boundary
+     *
+     * @description The last node passing the boundary hands the states to
+     *              the background writer, which builds and writes the
+     *              Checkpoint: the copy of the states of the whole tree is
+     *              not done by a worker.
+     *
+     * @param[in] node The index of the node in the topology
+     * @param[in] block The blocks completed by the node
+     */
+    private void snapshot(final int node, final int block) {
+        final TreeTopology topology = getTopology();
+
+        Snapshot snapshot = snapshots.get(block);
+        if (snapshot == null) {
+            Snapshot created = new Snapshot(topology.size());
+            snapshot = snapshots.putIfAbsent(block, created);
+            if (snapshot == null) snapshot = created;
+        }
+
+        final Component comp = topology.getComponent(node);
+        snapshot.keys[node] = comp.getConnections().getID();
+        snapshot.states[node] = (kernel instanceof StatefulKernel) ? ((StatefulKernel) kernel).saveState(comp) : new double[0];
+
+        if (snapshot.missing.decrementAndGet() > 0) return;
+
+        snapshots.remove(block);
+        final Snapshot complete = snapshot;
+        final String filePath = checkpointPath;
+        writer.execute(new Runnable() {
+                public void run() {
+                    try {
+                        new Checkpoint(block, totalSteps, blockSize, complete.keys, complete.states).write(filePath);
+                        lastCheckpoint = block;
+                    } catch (IOException exception) {
+                        writeFailure.compareAndSet(null, exception);
+                    }
+                }
+            });
+    }
+
+    /**
+     * @brief States of the nodes which have passed a block boundary
+     *
+     * @description Each node writes only its own position; the atomic
+     *              counter publishes the arrays to the last node.
+     */
+    private static class Snapshot {
+
+        final Key[] keys;
+        final double[][] states;
+        final AtomicInteger missing;
+
+        Snapshot(final int nodes) {
+            this.keys = new Key[nodes];
+            this.states = new double[nodes][];
+            this.missing = new AtomicInteger(nodes);
+        }
+
+    }
+
+    /**
+     * @return A single daemon thread writing the checkpoints
+     */
+    private static ExecutorService newWriter() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "checkpoint-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+    private static int blocksOf(final int timeSteps, final int blockSize) {
+        if (blockSize <= 0) throw new IllegalArgumentException("The block size must be positive.");
+        if (timeSteps < 0) throw new IllegalArgumentException("The number of time-steps cannot be negative.");
+
+        return (timeSteps + blockSize - 1) / blockSize;
+    }
+
+}
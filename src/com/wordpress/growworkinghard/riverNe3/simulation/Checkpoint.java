@@ -0,0 +1,218 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * @brief Snapshot of a BlockedSimulation at a block boundary
+ *
+ * @description A checkpoint stores the keys of the nodes, the number of
+ *              blocks all of them have completed and the state of their
+ *              StatefulKernel. Since every node stops at the same block
+ *              boundary, the simulation
+ *              can restart from there without any output buffer: the next
+ *              block of a parent only needs the next block of its children.
+ *              <p>
+ *              The file is a compact binary image written through a
+ *              <code>FileChannel</code>: a header with the block, the
+ *              time-steps and the block size, followed by the key and the
+ *              state of each node. It is first
+ *              written to a temporary file and then atomically moved, so a
+ *              crash while writing never corrupts the last checkpoint.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@Immutable
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x52694e33; //!< "RiN3"
+    private static final int VERSION = 1;
+
+    private final int block; //!< blocks completed by every node
+    private final int timeSteps; //!< time-steps of the simulation
+    private final int blockSize; //!< time-steps of each block
+    private final Key[] keys; //!< keys of the nodes
+    private final double[][] states; //!< kernel state of each node
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] block The blocks completed by every node
+     * @param[in] timeSteps The time-steps of the simulation
+     * @param[in] blockSize The time-steps of each block
+     * @param[in] keys The keys of the nodes
+     * @param[in] states The kernel state of each node, in the order of the
+     *            keys
+     */
+    public Checkpoint(final int block, final int timeSteps, final int blockSize, final Key[] keys, final double[][] states) {
+        if (keys.length != states.length) throw new IllegalArgumentException("Each node needs a state.");
+
+        this.block = block;
+        this.timeSteps = timeSteps;
+        this.blockSize = blockSize;
+        this.keys = Arrays.copyOf(keys, keys.length);
+        this.states = new double[states.length][];
+        for (int i = 0; i < states.length; i++)
+            this.states[i] = Arrays.copyOf(states[i], states[i].length);
+    }
+
+    /**
+     * @return The blocks completed by every node
+     */
+    public int getBlock() {
+        return block;
+    }
+
+    /**
+     * @return The time-steps of the simulation
+     */
+    public int getTimeSteps() {
+        return timeSteps;
+    }
+
+    /**
+     * @return The time-steps of each block
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return The number of nodes
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param[in] i The position of the node
+     * @return The key of the node
+     */
+    public Key getKey(final int i) {
+        return keys[i];
+    }
+
+    /**
+     * @param[in] i The position of the node
+     * @return A copy of the kernel state of the node
+     */
+    public double[] getState(final int i) {
+        return Arrays.copyOf(states[i], states[i].length);
+    }
+
+    /**
+     * @brief Write the checkpoint
+     *
+     * @param[in] filePath The path of the checkpoint file
+     * @throws IOException
+     */
+    public void write(final String filePath) throws IOException {
+        byte[][] hexKeys = new byte[keys.length][];
+        int bytes = 6 * Integer.SIZE / Byte.SIZE;
+        for (int i = 0; i < keys.length; i++) {
+            hexKeys[i] = keys[i].getString().getBytes(StandardCharsets.US_ASCII);
+            bytes += 2 * Integer.SIZE / Byte.SIZE + hexKeys[i].length + states[i].length * Double.SIZE / Byte.SIZE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(block).putInt(timeSteps).putInt(blockSize).putInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            buffer.putInt(hexKeys[i].length).put(hexKeys[i]);
+            buffer.putInt(states[i].length);
+            for (double value : states[i]) buffer.putDouble(value);
+        }
+        buffer.flip();
+
+        Path target = Paths.get(filePath);
+        Path tmp = Paths.get(filePath + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @brief Read a checkpoint
+     *
+     * @param[in] filePath The path of the checkpoint file
+     * @return The checkpoint
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static Checkpoint read(final String filePath) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filePath)));
+
+        if (buffer.remaining() < 6 * Integer.SIZE / Byte.SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            throw new IOException(filePath + " is not a checkpoint");
+
+        int block = buffer.getInt();
+        int timeSteps = buffer.getInt();
+        int blockSize = buffer.getInt();
+        // each node takes at least the two lengths of its key and its state
+        Key[] keys = new Key[readLength(buffer, 2 * Integer.SIZE / Byte.SIZE, filePath)];
+        double[][] states = new double[keys.length][];
+
+        for (int i = 0; i < keys.length; i++) {
+            byte[] hexKey = new byte[readLength(buffer, 1, filePath)];
+            buffer.get(hexKey);
+            keys[i] = new Key(new String(hexKey, StandardCharsets.US_ASCII));
+            states[i] = new double[readLength(buffer, Double.SIZE / Byte.SIZE, filePath)];
+            for (int k = 0; k < states[i].length; k++) states[i][k] = buffer.getDouble();
+        }
+
+        return new Checkpoint(block, timeSteps, blockSize, keys, states);
+    }
+
+    /**
+     * @brief Read the number of items that follow in a checkpoint file
+     *
+     * @param[in] buffer The content of the file
+     * @param[in] itemSize The minimum bytes of each item
+     * @param[in] filePath The path of the file, for the message
+     * @return The number of items
+     * @throws IOException if the file is truncated before the items end
+     */
+    private static int readLength(final ByteBuffer buffer, final int itemSize, final String filePath) throws IOException {
+        if (buffer.remaining() < Integer.SIZE / Byte.SIZE) throw new IOException(filePath + " is truncated");
+
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / itemSize) throw new IOException(filePath + " is truncated");
+
+        return length;
+    }
+
+}
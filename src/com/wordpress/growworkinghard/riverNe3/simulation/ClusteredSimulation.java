@@ -0,0 +1,160 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Run the simulations cluster by cluster
+ *
+ * @description The tree is partitioned by SubtreePartitioner in connected
+ *              sub-trees of similar cost. Each cluster is a single task that
+ *              simulates its nodes sequentially in post-order, so the
+ *              synchronization among threads is required only at the
+ *              boundaries of the clusters: a cluster is submitted when all
+ *              its child clusters have been simulated, with the same
+ *              dependency counting of RunSimulations.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class ClusteredSimulation extends Simulation {
+
+    private final SubtreePartitioner partition; //!< clusters of the tree
+    private final TreeTopology topology; //!< array view of the tree
+    private final AtomicIntegerArray pendingClusters; //!< child clusters of each cluster not simulated yet
+    private final AtomicInteger remainingClusters; //!< clusters not simulated yet
+    private final AtomicReference<RuntimeException> failure; //!< first exception thrown by a simulation
+    private final CountDownLatch latch; //!< released when the simulation ends
+    private final ExecutorService executor; //!< executor to process tasks asynchronously
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] executor The main executor service
+     * @param[in] grainSize The target number of nodes of each cluster
+     */
+    public ClusteredSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final double grainSize) {
+        this(new SubtreePartitioner(validTree(tree), grainSize), executor);
+    }
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] partition The partition of the tree in clusters
+     * @param[in] executor The main executor service
+     */
+    public ClusteredSimulation(final SubtreePartitioner partition, final ExecutorService executor) {
+        if (partition == null) throw new NullPointerException("The partition cannot be null.");
+        if (executor == null) throw new NullPointerException("The executor cannot be null.");
+
+        this.partition = partition;
+        this.topology = partition.getTopology();
+        this.executor = executor;
+
+        final int clusters = partition.getClusterCount();
+        this.pendingClusters = new AtomicIntegerArray(clusters);
+        for (int c = 0; c < clusters; c++)
+            if (partition.getClusterParent(c) >= 0)
+                pendingClusters.incrementAndGet(partition.getClusterParent(c));
+
+        this.remainingClusters = new AtomicInteger(clusters);
+        this.failure = new AtomicReference<RuntimeException>();
+        this.latch = new CountDownLatch(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    public void run() throws InterruptedException {
+        if (partition.getClusterCount() == 0) latch.countDown(); // nothing to simulate
+
+        List<Integer> sources = new ArrayList<Integer>(); // collected before any counter moves
+        for (int c = 0; c < partition.getClusterCount(); c++)
+            if (pendingClusters.get(c) == 0) sources.add(c);
+
+        for (int c : sources) executor.execute(new ClusterSimulation(c));
+
+        latch.await();
+
+        if (failure.get() != null) throw failure.get();
+    }
+
+    /**
+     * @return The partition of the tree in clusters
+     */
+    public SubtreePartitioner getPartition() {
+        return partition;
+    }
+
+    private static HashMap<Key, Component> validTree(final HashMap<Key, Component> tree) {
+        validateTree(tree); // precondition
+        return tree;
+    }
+
+    private class ClusterSimulation implements Runnable {
+
+        private final int cluster;
+
+        ClusterSimulation(final int cluster) { this.cluster = cluster; }
+
+        public void run() {
+            if (failure.get() != null) return; // simulation already aborted
+
+            try {
+                for (int position = 0; position < partition.getMembersCount(cluster); position++) {
+                    int node = partition.getMember(cluster, position);
+                    int parent = topology.getParent(node);
+                    simulate(topology.getComponent(node),
+                             (parent >= 0) ? topology.getComponent(parent) : null);
+                }
+            } catch (RuntimeException exception) {
+                failure.compareAndSet(null, exception);
+                latch.countDown();
+                return;
+            }
+
+            int parentCluster = partition.getClusterParent(cluster);
+            if (parentCluster >= 0 && pendingClusters.decrementAndGet(parentCluster) == 0)
+                executor.execute(new ClusterSimulation(parentCluster));
+
+            if (remainingClusters.decrementAndGet() == 0) latch.countDown();
+        }
+
+    }
+
+}
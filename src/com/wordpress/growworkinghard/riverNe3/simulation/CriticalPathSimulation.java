@@ -0,0 +1,253 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Run the simulations giving priority to the critical path
+ *
+ * @description When several nodes are ready, the one with the longest chain
+ *              of nodes still to simulate down to the outlet is run first
+ *              (<em>highest level first</em> list scheduling). Once a node is
+ *              ready its whole sub-tree has been simulated, so its remaining
+ *              path is given by its Component#getLayer(); the priorities are
+ *              computed once in the constructor. In this way, on deep and
+ *              skinny networks, the main stem never waits behind cheap side
+ *              leaves.
+ *              <p>
+ *              The duration of each node is measured during the run, in order
+ *              to report the theoretical lower bound of the makespan with
+ *              \f$P\f$ workers:
+ *              \f[
+ *              T_{lb} = \max\left(\max_{path} \sum_{i \in path} t_i,
+ *              \frac{1}{P}\sum_i t_i\right)
+ *              \f]
+ *              where the first term is the <em>critical path</em> (the
+ *              longest sum of durations from a leaf to the root) and the
+ *              second one is the total work spread on the workers.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class CriticalPathSimulation extends Simulation {
+
+    private final TreeTopology topology; //!< array view of the tree
+    private final int[] priority; //!< remaining path to the outlet of each node
+    private final long[] duration; //!< measured duration of each node, in nanoseconds
+    private final AtomicIntegerArray pendingChildren; //!< number of children of each node not simulated yet
+    private final PriorityBlockingQueue<Integer> readyQueue; //!< ready nodes, longest path first
+    private final Semaphore readyNodes; //!< a permit for each node in the ready queue
+    private final AtomicInteger remainingNodes; //!< nodes not simulated yet
+    private final AtomicReference<RuntimeException> failure; //!< first exception thrown by a simulation
+    private final CountDownLatch latch; //!< latch to synchronize the progress of threads
+    private final ExecutorService executor; //!< executor to process tasks asynchronously
+    private final int concurrencyLevel; //!< the running threads
+    private volatile boolean completed; //!< <code>true</code> when no more nodes have to be simulated
+    private volatile long makespan; //!< measured duration of the run, in nanoseconds
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] executor The main executor service
+     * @param[in] threadsNumber The number of threads available
+     */
+    public CriticalPathSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final int threadsNumber) {
+        validateTree(tree); // precondition
+        if (threadsNumber <= 0) throw new IllegalArgumentException("The number of threads must be positive.");
+
+        this.topology = new TreeTopology(tree);
+        this.concurrencyLevel = threadsNumber;
+        this.executor = executor;
+
+        final int size = topology.size();
+        this.priority = new int[size];
+        this.duration = new long[size];
+        this.pendingChildren = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            priority[i] = topology.getComponent(i).getLayer();
+            pendingChildren.set(i, topology.getChildrenCount(i));
+        }
+
+        this.readyQueue = new PriorityBlockingQueue<Integer>(Math.max(1, size), new Comparator<Integer>() {
+                public int compare(final Integer lhs, final Integer rhs) {
+                    int result = Integer.compare(priority[rhs], priority[lhs]); // longest path first
+                    return (result != 0) ? result : Integer.compare(lhs, rhs);
+                }
+            });
+        this.readyNodes = new Semaphore(0);
+        this.remainingNodes = new AtomicInteger(size);
+        this.failure = new AtomicReference<RuntimeException>();
+        this.latch = new CountDownLatch(threadsNumber);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    public void run() throws InterruptedException {
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < topology.size(); i++)
+            if (pendingChildren.get(i) == 0) pushReady(i);
+
+        if (remainingNodes.get() == 0) stopWorkers(); // nothing to simulate
+
+        for (int i = 0; i < concurrencyLevel; i++)
+            executor.submit(new PrioritySimulations());
+
+        latch.await();
+        makespan = System.nanoTime() - start;
+
+        if (failure.get() != null) throw failure.get();
+    }
+
+    /**
+     * @brief Length of the critical path in number of nodes
+     *
+     * @return The number of nodes of the longest path from a leaf to the root
+     */
+    public int getCriticalPathLength() {
+        int length = 0;
+        for (int root : topology.getRoots())
+            length = Math.max(length, topology.getHeight(root));
+        return length;
+    }
+
+    /**
+     * @brief Measured duration of the last run
+     *
+     * @return The makespan in nanoseconds
+     */
+    public long getMakespan() {
+        return makespan;
+    }
+
+    /**
+     * @brief Theoretical lower bound of the makespan
+     *
+     * @description It is computed on the durations measured during the last
+     *              run, so it is available only after CriticalPathSimulation#run().
+     *
+     * @return The lower bound in nanoseconds
+     */
+    public long getMakespanLowerBound() {
+        final long[] pathDuration = new long[topology.size()];
+        long criticalPath = 0;
+        long totalWork = 0;
+
+        for (int i = 0; i < topology.size(); i++) { // post-order: children first
+            long longestChild = 0;
+            if (topology.getLeft(i) >= 0) longestChild = pathDuration[topology.getLeft(i)];
+            if (topology.getRight(i) >= 0) longestChild = Math.max(longestChild, pathDuration[topology.getRight(i)]);
+
+            pathDuration[i] = duration[i] + longestChild;
+            criticalPath = Math.max(criticalPath, pathDuration[i]);
+            totalWork += duration[i];
+        }
+
+        return Math.max(criticalPath, totalWork / concurrencyLevel);
+    }
+
+    /**
+     * @brief Simply overriding of the <code>toString</code> method
+     *
+     * @return The makespan of the last run compared with its lower bound
+     */
+    @Override
+    public String toString() {
+        long lowerBound = getMakespanLowerBound();
+
+        String tmp = this.getClass().getSimpleName();
+        tmp += " ==> nodes = " + topology.size();
+        tmp += " - critical path = " + getCriticalPathLength() + " nodes";
+        tmp += " - makespan = " + makespan / 1e6 + " ms";
+        tmp += " - lower bound = " + lowerBound / 1e6 + " ms";
+        if (makespan > 0) tmp += " - efficiency = " + (double) lowerBound / makespan;
+
+        return tmp;
+    }
+
+    private void pushReady(final int index) {
+        readyQueue.offer(index);
+        readyNodes.release();
+    }
+
+    private void runSim(final int index) {
+        final int parent = topology.getParent(index);
+        final Component comp = topology.getComponent(index);
+
+        try {
+            long start = System.nanoTime();
+            simulate(comp, (parent >= 0) ? topology.getComponent(parent) : null);
+            duration[index] = System.nanoTime() - start; // published by the latch
+        } catch (RuntimeException exception) {
+            failure.compareAndSet(null, exception);
+            stopWorkers();
+            return;
+        }
+
+        if (parent >= 0 && pendingChildren.decrementAndGet(parent) == 0) pushReady(parent);
+
+        if (remainingNodes.decrementAndGet() == 0) stopWorkers();
+    }
+
+    private void stopWorkers() {
+        completed = true;
+        readyNodes.release(concurrencyLevel);
+    }
+
+    private class PrioritySimulations implements Runnable {
+
+        public void run() {
+            try {
+                while(true) {
+                    readyNodes.acquire(); // parked until a node is ready
+                    if (completed) break;
+                    runSim(readyQueue.poll());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                latch.countDown();
+            }
+        }
+
+    }
+
+}
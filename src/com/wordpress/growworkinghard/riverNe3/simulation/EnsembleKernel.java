@@ -0,0 +1,54 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+
+/**
+ * @brief Interface of the kernels simulating all the members of an ensemble
+ *
+ * @description The state of the ensemble is stored as
+ *              <em>struct-of-arrays</em>: each parameter and each output is a
+ *              primitive array with a position per member. The kernel of a
+ *              node is called once for all the members, so it can loop over
+ *              contiguous arrays while the data of the node are hot in the
+ *              cache.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public interface EnsembleKernel {
+
+    /**
+     * @brief Simulate all the members of the ensemble for a node
+     *
+     * @param[in] node The node to simulate
+     * @param[in] parameters The parameters of the ensemble: the value of the
+     *            parameter <tt>p</tt> for the member <tt>m</tt> is
+     *            <tt>parameters[p][m]</tt>
+     * @param[in] inputs The outputs of the children, the left child first;
+     *            empty for a leaf. The output of the member <tt>m</tt> is in
+     *            the position <tt>m</tt>
+     * @param[out] outputs The outputs of the node, one per member
+     */
+    public void compute(final Component node, final double[][] parameters, final double[][] inputs, final double[] outputs);
+
+}
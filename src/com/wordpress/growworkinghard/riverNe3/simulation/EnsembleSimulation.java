@@ -0,0 +1,208 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Run an ensemble of scenarios over one shared tree
+ *
+ * @description For uncertainty analysis the same tree is simulated many times
+ *              with different parameters. Instead of building, decorating and
+ *              simulating the tree once per scenario, this mode shares a
+ *              single TreeTopology among all the <em>members</em> of the
+ *              ensemble and keeps their state in struct-of-arrays form: a
+ *              <code>double</code> array per parameter, shared by all the
+ *              nodes, and an output array per node, both with a position per
+ *              member.
+ *              <p>
+ *              The unit of work is the pair (node, all members): a node is
+ *              submitted when all its children have been simulated, with the
+ *              dependency counting of RunSimulations, and its EnsembleKernel
+ *              processes every member in a single call. The outputs of the
+ *              children are passed to the parent kernel without any copy.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class EnsembleSimulation extends Simulation {
+
+    private final TreeTopology topology; //!< array view of the tree, shared by all the members
+    private final EnsembleKernel kernel; //!< kernel of the nodes
+    private final double[][] parameters; //!< parameters of the members, one array per parameter
+    private final double[][] outputs; //!< outputs of each node, one position per member
+    private final double[][][] inputs; //!< outputs of the children of each node
+    private final ExecutorService executor; //!< executor to process tasks asynchronously
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] topology The array view of the tree
+     * @param[in] executor The main executor service
+     * @param[in] kernel The kernel of the nodes
+     * @param[in] parameters The parameters of the members: the value of the
+     *            parameter <tt>p</tt> for the member <tt>m</tt> is
+     *            <tt>parameters[p][m]</tt>
+     */
+    public EnsembleSimulation(final TreeTopology topology, final ExecutorService executor, final EnsembleKernel kernel, final double[][] parameters) {
+        if (topology == null) throw new NullPointerException("The topology cannot be null.");
+        if (executor == null) throw new NullPointerException("The executor cannot be null.");
+        if (kernel == null) throw new NullPointerException("The kernel cannot be null.");
+        validateParameters(parameters); // precondition
+
+        this.topology = topology;
+        this.executor = executor;
+        this.kernel = kernel;
+        this.parameters = new double[parameters.length][];
+        for (int p = 0; p < parameters.length; p++)
+            this.parameters[p] = Arrays.copyOf(parameters[p], parameters[p].length);
+
+        final int members = parameters[0].length;
+        this.outputs = new double[topology.size()][members];
+        this.inputs = new double[topology.size()][][];
+        for (int i = 0; i < topology.size(); i++) {
+            int left = topology.getLeft(i);
+            int right = topology.getRight(i);
+
+            if (left >= 0 && right >= 0) inputs[i] = new double[][] {outputs[left], outputs[right]};
+            else if (left >= 0) inputs[i] = new double[][] {outputs[left]};
+            else if (right >= 0) inputs[i] = new double[][] {outputs[right]};
+            else inputs[i] = new double[0][];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    public void run() throws InterruptedException {
+        final int size = topology.size();
+        final AtomicIntegerArray pendingChildren = new AtomicIntegerArray(size);
+        final AtomicInteger remainingNodes = new AtomicInteger(size);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        for (int i = 0; i < size; i++) pendingChildren.set(i, topology.getChildrenCount(i));
+
+        if (size == 0) latch.countDown(); // nothing to simulate
+
+        for (int i = 0; i < size; i++)
+            if (topology.getChildrenCount(i) == 0)
+                executor.execute(new MembersSimulation(i, pendingChildren, remainingNodes, failure, latch));
+
+        latch.await();
+
+        if (failure.get() != null) throw failure.get();
+    }
+
+    /**
+     * @return The number of members of the ensemble
+     */
+    public int getMembersCount() {
+        return parameters[0].length;
+    }
+
+    /**
+     * @return The array view of the tree
+     */
+    public TreeTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @brief The outputs of a node
+     *
+     * @param[in] key The key of the node
+     * @return A copy of the outputs of the node, one per member
+     */
+    public double[] getOutputs(final Key key) {
+        int index = topology.indexOf(key);
+        if (index < 0) throw new IllegalArgumentException("Key " + key.getString() + " not in the tree");
+
+        return Arrays.copyOf(outputs[index], outputs[index].length);
+    }
+
+    /**
+     * @brief Validation of the parameters of the ensemble
+     *
+     * @param[in] parameters The parameters of the members
+     */
+    private static void validateParameters(final double[][] parameters) {
+        if (parameters == null || parameters.length == 0 || parameters[0] == null)
+            throw new NullPointerException("The ensemble needs at least a parameter.");
+
+        for (double[] parameter : parameters)
+            if (parameter == null || parameter.length != parameters[0].length)
+                throw new IllegalArgumentException("Each parameter must have a value for each member.");
+
+        if (parameters[0].length == 0)
+            throw new IllegalArgumentException("The ensemble needs at least a member.");
+    }
+
+    private class MembersSimulation implements Runnable {
+
+        private final int node;
+        private final AtomicIntegerArray pendingChildren;
+        private final AtomicInteger remainingNodes;
+        private final AtomicReference<RuntimeException> failure;
+        private final CountDownLatch latch;
+
+        MembersSimulation(final int node, final AtomicIntegerArray pendingChildren, final AtomicInteger remainingNodes, final AtomicReference<RuntimeException> failure, final CountDownLatch latch) {
+            this.node = node;
+            this.pendingChildren = pendingChildren;
+            this.remainingNodes = remainingNodes;
+            this.failure = failure;
+            this.latch = latch;
+        }
+
+        public void run() {
+            if (failure.get() != null) return; // simulation already aborted
+
+            try {
+                compute(kernel, topology.getComponent(node), parameters, inputs[node], outputs[node]);
+            } catch (RuntimeException exception) {
+                failure.compareAndSet(null, exception);
+                latch.countDown();
+                return;
+            }
+
+            int parent = topology.getParent(node);
+            if (parent >= 0 && pendingChildren.decrementAndGet(parent) == 0)
+                executor.execute(new MembersSimulation(parent, pendingChildren, remainingNodes, failure, latch));
+
+            if (remainingNodes.decrementAndGet() == 0) latch.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Run the simulations with a post-order <strong>fork/join</strong>
+ *
+ * @description Each sub-tree is a <tt>RecursiveAction</tt>: it forks the
+ *              sub-trees of the <tt>LCHILD</tt> and of the <tt>RCHILD</tt>,
+ *              joins them and then simulates its own root. The post-order
+ *              comes from the recursion itself, so neither a shared map of
+ *              nodes to simulate nor a <tt>CountDownLatch</tt> are required:
+ *              the tree structure is only read to retrieve the children.
+ *              <p>
+ *              The <tt>ForkJoinPool</tt> balances the work with <em>work
+ *              stealing</em>: an idle thread steals the oldest (i.e. the
+ *              biggest) sub-tree forked by a busy thread, and this keeps the
+ *              cores busy even when a branch of the river network is much
+ *              bigger than the other one.
+ *              </p>
+ *              <p>
+ *              The depth of the recursion is equal to the number of layers
+ *              of the tree.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class ForkJoinSimulation extends Simulation {
+
+    private final HashMap<Key, Component> tree; //!< tree structure, only read
+    private final ForkJoinPool pool; //!< pool of work stealing threads
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] pool The pool where the sub-trees are forked
+     */
+    public ForkJoinSimulation(final HashMap<Key, Component> tree, final ForkJoinPool pool) {
+        validateTree(tree); // precondition
+        if (pool == null) throw new NullPointerException("The ForkJoinPool cannot be null.");
+
+        this.tree = new HashMap<Key, Component>(tree);
+        this.pool = pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    public void run() throws InterruptedException {
+        List<SubtreeSimulation> roots = new ArrayList<SubtreeSimulation>();
+
+        for (Component root : rootsOf(tree))
+            roots.add(new SubtreeSimulation(root, null));
+
+        pool.invoke(new RootsSimulation(roots));
+    }
+
+    /**
+     * @brief Retrieve a child from its key
+     *
+     * @param[in] childKey The key of the child, possibly <code>null</code>
+     * @return The child, <code>null</code> if it is not in the tree
+     */
+    private Component childOf(final Key childKey) {
+        return (childKey != null) ? tree.get(childKey) : null;
+    }
+
+    private class RootsSimulation extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final List<SubtreeSimulation> roots;
+
+        RootsSimulation(final List<SubtreeSimulation> roots) { this.roots = roots; }
+
+        @Override
+        protected void compute() {
+            invokeAll(roots);
+        }
+
+    }
+
+    private class SubtreeSimulation extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Component node;
+        private final Component parent;
+
+        SubtreeSimulation(final Component node, final Component parent) {
+            this.node = node;
+            this.parent = parent;
+        }
+
+        @Override
+        protected void compute() {
+            Component left = childOf(node.getConnections().getLCHILD());
+            Component right = childOf(node.getConnections().getRCHILD());
+
+            if (left != null && right != null) {
+                invokeAll(new SubtreeSimulation(left, node),
+                          new SubtreeSimulation(right, node));
+            } else if (left != null) { // only child: no fork required
+                new SubtreeSimulation(left, node).compute();
+            } else if (right != null) {
+                new SubtreeSimulation(right, node).compute();
+            }
+
+            simulate(node, parent);
+        }
+
+    }
+
+}
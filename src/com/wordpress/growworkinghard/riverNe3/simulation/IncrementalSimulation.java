@@ -0,0 +1,259 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Re-simulation of the sub-basins affected by a change
+ *
+ * @description The outputs of each node over the whole simulated period are
+ *              kept after a run. When the parameters of some sub-basins
+ *              change, <code>rerun(changed)</code> marks as <em>dirty</em> the
+ *              changed nodes and their ancestors, climbing the tree through
+ *              the parent index of the TreeTopology
+ *              (<code>topology.getParent(index)</code>), and simulates only
+ *              the dirty nodes. A dirty node waits just for its
+ *              dirty children; the clean ones are read from the cached
+ *              outputs, so an edit of a single sub-basin costs a path to the
+ *              root instead of the whole tree.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class IncrementalSimulation extends Simulation {
+
+    private final TreeTopology topology; //!< array view of the tree
+    private final SimulationKernel kernel; //!< kernel of the nodes
+    private final int timeSteps; //!< number of time-steps of the simulation
+    private final ExecutorService executor; //!< executor to process tasks asynchronously
+    @GuardedBy("this") private final double[][] outputs; //!< cached outputs of each node
+    @GuardedBy("this") private final double[][][] inputs; //!< outputs of the children of each node
+    @GuardedBy("this") private boolean simulated; //!< true if the cached outputs are complete
+    @GuardedBy("this") private int lastRecomputed; //!< nodes simulated by the last run
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The <code>HashMap</code> containing the binary tree
+     * @param[in] executor The main executor service
+     * @param[in] kernel The kernel of the nodes
+     * @param[in] timeSteps The number of time-steps of the simulation
+     */
+    public IncrementalSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final SimulationKernel kernel, final int timeSteps) {
+        if (executor == null) throw new NullPointerException("The executor cannot be null.");
+        if (kernel == null) throw new NullPointerException("The kernel cannot be null.");
+        if (timeSteps < 1) throw new IllegalArgumentException("The time-steps must be at least 1.");
+
+        this.topology = new TreeTopology(tree);
+        this.executor = executor;
+        this.kernel = kernel;
+        this.timeSteps = timeSteps;
+        this.outputs = new double[topology.size()][timeSteps];
+        this.inputs = new double[topology.size()][][];
+
+        for (int i = 0; i < topology.size(); i++) {
+            int left = topology.getLeft(i);
+            int right = topology.getRight(i);
+
+            if (left >= 0 && right >= 0) inputs[i] = new double[][] {outputs[left], outputs[right]};
+            else if (left >= 0) inputs[i] = new double[][] {outputs[left]};
+            else if (right >= 0) inputs[i] = new double[][] {outputs[right]};
+            else inputs[i] = new double[0][];
+        }
+    }
+
+    /**
+     * @brief Simulation of the whole tree
+     *
+     * @see Simulation#run()
+     */
+    public synchronized void run() throws InterruptedException {
+        boolean[] dirty = new boolean[topology.size()];
+        Arrays.fill(dirty, true);
+        simulateDirty(dirty);
+    }
+
+    /**
+     * @brief Simulation of the changed nodes and of their ancestors
+     *
+     * @description If the tree has never been simulated completely, the whole
+     *              tree is simulated.
+     *
+     * @param[in] changed The keys of the nodes whose parameters changed
+     * @throws InterruptedException
+     */
+    public synchronized void rerun(final Set<Key> changed) throws InterruptedException {
+        if (changed == null) throw new NullPointerException("The set of changed keys cannot be null.");
+
+        if (!simulated) {
+            run();
+            return;
+        }
+
+        boolean[] dirty = new boolean[topology.size()];
+        for (Key key : changed) {
+            int index = topology.indexOf(key);
+            if (index < 0) throw new IllegalArgumentException("Key " + key.getString() + " not in the tree");
+
+            while (index >= 0 && !dirty[index]) { // stops on the path already marked
+                dirty[index] = true;
+                index = topology.getParent(index);
+            }
+        }
+
+        simulateDirty(dirty);
+    }
+
+    /**
+     * @return The number of nodes simulated by the last run
+     */
+    public synchronized int getLastRecomputed() {
+        return lastRecomputed;
+    }
+
+    /**
+     * @return The array view of the tree
+     */
+    public TreeTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return The number of time-steps of the simulation
+     */
+    public int getTimeSteps() {
+        return timeSteps;
+    }
+
+    /**
+     * @brief The cached outputs of a node
+     *
+     * @param[in] key The key of the node
+     * @return A copy of the outputs of the node over all the time-steps
+     */
+    public synchronized double[] getOutput(final Key key) {
+        final int index = topology.indexOf(key);
+        if (index < 0) throw new IllegalArgumentException("Key " + key.getString() + " not in the tree");
+
+        return Arrays.copyOf(outputs[index], timeSteps);
+    }
+
+    /**
+     * @brief Simulation of the dirty nodes with dependency counting
+     *
+     * @description The pending counter of a dirty node is the number of its
+     *              dirty children. Dirty nodes without dirty children start
+     *              immediately.
+     *
+     * @param[in] dirty The flags of the nodes to simulate
+     * @throws InterruptedException
+     */
+    private void simulateDirty(final boolean[] dirty) throws InterruptedException {
+        final int size = topology.size();
+        final AtomicIntegerArray pendingChildren = new AtomicIntegerArray(size);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        final List<Integer> sources = new ArrayList<Integer>();
+        int dirtyNodes = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (!dirty[i]) continue;
+
+            dirtyNodes++;
+            int left = topology.getLeft(i);
+            int right = topology.getRight(i);
+            int pending = 0;
+            if (left >= 0 && dirty[left]) pending++;
+            if (right >= 0 && dirty[right]) pending++;
+            pendingChildren.set(i, pending);
+            if (pending == 0) sources.add(i);
+        }
+
+        final AtomicInteger remainingNodes = new AtomicInteger(dirtyNodes);
+        final CountDownLatch latch = new CountDownLatch(1);
+        if (dirtyNodes == 0) latch.countDown(); // nothing changed
+
+        simulated = false; // a failure leaves the cache inconsistent
+        for (int i : sources)
+            executor.execute(new DirtySimulation(i, dirty, pendingChildren, remainingNodes, failure, latch));
+
+        latch.await();
+        lastRecomputed = dirtyNodes;
+
+        if (failure.get() != null) throw failure.get();
+        simulated = true;
+    }
+
+    private class DirtySimulation implements Runnable {
+
+        private final int node;
+        private final boolean[] dirty;
+        private final AtomicIntegerArray pendingChildren;
+        private final AtomicInteger remainingNodes;
+        private final AtomicReference<RuntimeException> failure;
+        private final CountDownLatch latch;
+
+        DirtySimulation(final int node, final boolean[] dirty, final AtomicIntegerArray pendingChildren, final AtomicInteger remainingNodes, final AtomicReference<RuntimeException> failure, final CountDownLatch latch) {
+            this.node = node;
+            this.dirty = dirty;
+            this.pendingChildren = pendingChildren;
+            this.remainingNodes = remainingNodes;
+            this.failure = failure;
+            this.latch = latch;
+        }
+
+        public void run() {
+            if (failure.get() != null) return; // simulation already aborted
+
+            try {
+                compute(kernel, topology.getComponent(node), 0, timeSteps, inputs[node], outputs[node]);
+            } catch (RuntimeException exception) {
+                failure.compareAndSet(null, exception);
+                latch.countDown();
+                return;
+            }
+
+            int parent = topology.getParent(node);
+            if (parent >= 0 && dirty[parent] && pendingChildren.decrementAndGet(parent) == 0)
+                executor.execute(new DirtySimulation(parent, dirty, pendingChildren, remainingNodes, failure, latch));
+
+            if (remainingNodes.decrementAndGet() == 0) latch.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.GhostNode;
+import com.wordpress.growworkinghard.riverNe3.composite.Leaf;
+import com.wordpress.growworkinghard.riverNe3.composite.LocalNode;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * @brief Binding of a kernel to each type of node
+ *
+ * @description <code>Component.runSimulation(parent)</code> and
+ *              <code>notify(child)</code> carry no data. The kernels give the
+ *              nodes a data flow: each engine owns a preallocated
+ *              <code>double</code> buffer per node and the kernel of a parent
+ *              reads the buffers of its children directly. This class binds a
+ *              different SimulationKernel to each concrete type of
+ *              composite#Component:
+ *              <ul>
+ *              <li>composite#Leaf, usually a rainfall-runoff model;</li>
+ *              <li>composite#Node, usually the routing of the inputs plus the
+ *              local contribution;</li>
+ *              <li>composite#LocalNode, a node where a measurement is
+ *              available;</li>
+ *              <li>composite#GhostNode, a node without a basin, which
+ *              usually just passes the inputs through.</li>
+ *              </ul>
+ *              Being itself a SimulationKernel, it can be given to any engine
+ *              using kernels. To be used by a ProcessSimulation, it has to be
+ *              wrapped in a kernel with a public no-argument constructor which
+ *              delegates to it.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@Immutable
+public final class NodeTypeKernel implements SimulationKernel {
+
+    /**
+     * @brief The output is the sum of the inputs, zero for a leaf
+     */
+    public static final SimulationKernel PASS_THROUGH = new SimulationKernel() {
+            public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+                for (int k = 0; k < steps; k++) {
+                    double value = 0.0;
+                    for (double[] input : inputs) value += input[k];
+                    output[k] = value;
+                }
+            }
+        };
+
+    private final SimulationKernel leafKernel; //!< kernel of the leaves
+    private final SimulationKernel nodeKernel; //!< kernel of the plain nodes
+    private final SimulationKernel localNodeKernel; //!< kernel of the local nodes
+    private final SimulationKernel ghostNodeKernel; //!< kernel of the ghost nodes
+
+    /**
+     * @brief Constructor
+     *
+     * @description Local nodes use the kernel of the plain nodes and ghost
+     *              nodes pass the inputs through.
+     *
+     * @param[in] leafKernel The kernel of the leaves
+     * @param[in] nodeKernel The kernel of the nodes
+     */
+    public NodeTypeKernel(final SimulationKernel leafKernel, final SimulationKernel nodeKernel) {
+        this(leafKernel, nodeKernel, nodeKernel, PASS_THROUGH);
+    }
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] leafKernel The kernel of the leaves
+     * @param[in] nodeKernel The kernel of the nodes
+     * @param[in] localNodeKernel The kernel of the local nodes
+     * @param[in] ghostNodeKernel The kernel of the ghost nodes
+     */
+    public NodeTypeKernel(final SimulationKernel leafKernel, final SimulationKernel nodeKernel, final SimulationKernel localNodeKernel, final SimulationKernel ghostNodeKernel) {
+        if (leafKernel == null || nodeKernel == null || localNodeKernel == null || ghostNodeKernel == null)
+            throw new NullPointerException("Each type of node needs a kernel.");
+
+        this.leafKernel = leafKernel;
+        this.nodeKernel = nodeKernel;
+        this.localNodeKernel = localNodeKernel;
+        this.ghostNodeKernel = ghostNodeKernel;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SimulationKernel#compute(Component, int, int, double[][], double[])
+     */
+    public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+        getKernel(node).compute(node, firstStep, steps, inputs, output);
+    }
+
+    /**
+     * @brief The kernel bound to the type of a node
+     *
+     * @param[in] node The node
+     * @return The kernel of the node
+     */
+    public SimulationKernel getKernel(final Component node) {
+        if (node instanceof Leaf) return leafKernel;
+        else if (node instanceof LocalNode) return localNodeKernel;
+        else if (node instanceof GhostNode) return ghostNodeKernel;
+        else return nodeKernel;
+    }
+
+}
@@ -0,0 +1,336 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Run a multi time-step simulation as a pipeline
+ *
+ * @description Each node is simulated once per time-step. The step \f$t\f$ of
+ *              a node can start as soon as:
+ *              <ol>
+ *              <li>the node has finished its own step \f$t-1\f$;</li>
+ *              <li>its children have finished their step \f$t\f$;</li>
+ *              <li>the node is less than \f$W\f$ steps ahead of its parent,
+ *              where \f$W\f$ is the <em>lookahead window</em>.</li>
+ *              </ol>
+ *              There is no barrier among the time-steps of the whole tree: the
+ *              leaves run ahead of the outlet and the tree works as a
+ *              pipeline. The window bounds the outputs of a child which have
+ *              not been consumed by its parent yet, so at most \f$W\f$ outputs
+ *              per node have to be buffered.
+ *              <p>
+ *              When the nodes are simulated by a SimulationKernel, each node
+ *              owns a ring of \f$W\f$ output buffers of one time-step,
+ *              allocated once: the step \f$t\f$ is written in the buffer
+ *              \f$t \bmod W\f$ and the parent reads it from the same buffer,
+ *              which is not overwritten before the parent has finished its
+ *              step \f$t\f$. Without a kernel each step simply runs
+ *              PipelinedSimulation#simulateStep(final Component, final Component, final int)
+ *              and nothing is buffered.
+ *              </p>
+ *              <p>
+ *              A node is submitted to the executor by the thread that makes
+ *              it runnable: when a step is finished, the node itself, its
+ *              parent and its children are checked. An atomic <em>busy</em>
+ *              flag ensures that each node runs one step at a time, and the
+ *              condition is checked again after the flag is released in
+ *              order not to lose a wake-up.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class PipelinedSimulation extends Simulation {
+
+    private final TreeTopology topology; //!< array view of the tree
+    private final SimulationKernel kernel; //!< kernel of the nodes, <code>null</code> to simulate the components
+    private final double[][][] outputs; //!< ring of the output buffers of each node
+    private final double[][][][] inputs; //!< output buffers of the children of each node, per slot of the ring
+    private final int timeSteps; //!< number of time-steps of the simulation
+    private final int lookahead; //!< maximum number of steps a node can be ahead of its parent
+    private final AtomicIntegerArray completedSteps; //!< steps completed by each node
+    private final AtomicIntegerArray busy; //!< 1 if the node is running or about to run a step
+    private final AtomicLong remainingSteps; //!< steps of the whole tree not simulated yet
+    private final AtomicReference<RuntimeException> failure; //!< first exception thrown by a simulation
+    private final CountDownLatch latch; //!< released when the simulation ends
+    private final ExecutorService executor; //!< executor to process tasks asynchronously
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] executor The main executor service
+     * @param[in] timeSteps The number of time-steps to simulate
+     * @param[in] lookahead The maximum number of steps a node can be ahead of
+     *            its parent
+     */
+    public PipelinedSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final int timeSteps, final int lookahead) {
+        this(tree, executor, null, timeSteps, lookahead, false);
+    }
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] executor The main executor service
+     * @param[in] kernel The kernel of the nodes, run one time-step at a time
+     * @param[in] timeSteps The number of time-steps to simulate
+     * @param[in] lookahead The maximum number of steps a node can be ahead of
+     *            its parent, i.e. the number of output buffers of each node
+     */
+    public PipelinedSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final SimulationKernel kernel, final int timeSteps, final int lookahead) {
+        this(tree, executor, kernel, timeSteps, lookahead, true);
+    }
+
+    private PipelinedSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final SimulationKernel kernel, final int timeSteps, final int lookahead, final boolean buffered) {
+        validateTree(tree); // precondition
+        if (buffered && kernel == null) throw new NullPointerException("The kernel cannot be null.");
+        if (executor == null) throw new NullPointerException("The executor cannot be null.");
+        if (timeSteps < 0) throw new IllegalArgumentException("The number of time-steps cannot be negative.");
+        if (lookahead <= 0) throw new IllegalArgumentException("The lookahead window must be positive.");
+
+        this.topology = new TreeTopology(tree);
+        this.executor = executor;
+        this.timeSteps = timeSteps;
+        this.lookahead = lookahead;
+        this.completedSteps = new AtomicIntegerArray(topology.size());
+        this.busy = new AtomicIntegerArray(topology.size());
+        this.remainingSteps = new AtomicLong((long) topology.size() * timeSteps);
+        this.failure = new AtomicReference<RuntimeException>();
+        this.latch = new CountDownLatch(1);
+
+        this.kernel = kernel;
+        this.outputs = new double[buffered ? topology.size() : 0][lookahead][1];
+        this.inputs = new double[outputs.length][lookahead][][];
+        for (int i = 0; i < outputs.length; i++) {
+            int left = topology.getLeft(i);
+            int right = topology.getRight(i);
+
+            for (int slot = 0; slot < lookahead; slot++) {
+                if (left >= 0 && right >= 0) inputs[i][slot] = new double[][] {outputs[left][slot], outputs[right][slot]};
+                else if (left >= 0) inputs[i][slot] = new double[][] {outputs[left][slot]};
+                else if (right >= 0) inputs[i][slot] = new double[][] {outputs[right][slot]};
+                else inputs[i][slot] = new double[0][];
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    public void run() throws InterruptedException {
+        if (remainingSteps.get() == 0) latch.countDown(); // nothing to simulate
+
+        for (int i = 0; i < topology.size(); i++)
+            if (topology.getChildrenCount(i) == 0) trySchedule(i);
+
+        latch.await();
+
+        if (failure.get() != null) throw failure.get();
+    }
+
+    /**
+     * @return The number of time-steps of the simulation
+     */
+    public int getTimeSteps() {
+        return timeSteps;
+    }
+
+    /**
+     * @return The maximum number of steps a node can be ahead of its parent
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * @brief Output of a node buffered at the end of the simulation
+     *
+     * @description Only the last \f$W\f$ time-steps of each node are still
+     *              buffered after <code>run()</code>; a kernel needing the
+     *              whole series (e.g. the discharge at the outlet) has to store
+     *              it.
+     *
+     * @param[in] key The key of the node
+     * @param[in] step One of the last <code>lookahead</code> time-steps
+     * @return The output of the node at the time-step
+     */
+    public double getOutput(final Key key, final int step) {
+        if (kernel == null) throw new IllegalStateException("The outputs are buffered only with a kernel");
+
+        final int index = topology.indexOf(key);
+        if (index < 0) throw new IllegalArgumentException("Key " + key.getString() + " not in the tree");
+        if (step < timeSteps - lookahead || step >= timeSteps)
+            throw new IllegalArgumentException("Time-step " + step + " not buffered");
+
+        return outputs[index][step % lookahead][0];
+    }
+
+    /**
+     * @brief Run a single time-step of a node
+     *
+     * @description Override this method to run a time-dependent kernel. By
+     *              default the node is simulated once per step.
+     *
+     * @param[in] node The node to simulate
+     * @param[in] parent The parent of the node, <code>null</code> for the root
+     * @param[in] step The time-step, starting from 0
+     */
+    protected void simulateStep(final Component node, final Component parent, final int step) {
+        simulate(node, parent);
+    }
+
+    /**
+     * @return The array view of the tree
+     */
+    protected TreeTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @brief Start the simulation from a time-step
+     *
+     * @description Marks the first steps of every node as already completed,
+     *              for instance when the simulation is resumed. It must be
+     *              called before <code>run()</code>.
+     *
+     * @param[in] step The first time-step to simulate
+     */
+    protected void startFrom(final int step) {
+        if (step < 0 || step > timeSteps) throw new IllegalArgumentException("Time-step " + step + " out of the simulation");
+
+        for (int i = 0; i < topology.size(); i++) completedSteps.set(i, step);
+        remainingSteps.set((long) topology.size() * (timeSteps - step));
+    }
+
+    /**
+     * @brief Run a single time-step of a node from its index
+     *
+     * @description Subclasses working on arrays indexed as the TreeTopology
+     *              can override this method instead of
+     *              PipelinedSimulation#simulateStep(final Component, final Component, final int).
+     *              By default the step is run by the kernel, if any, on the
+     *              buffers of the slot <tt>step % lookahead</tt>.
+     *
+     * @param[in] node The index of the node in the topology
+     * @param[in] step The time-step, starting from 0
+     */
+    protected void runStep(final int node, final int step) {
+        if (kernel != null) {
+            final int slot = step % lookahead;
+            compute(kernel, topology.getComponent(node), step, 1, inputs[node][slot], outputs[node][slot]);
+            return;
+        }
+
+        final int parent = topology.getParent(node);
+        simulateStep(topology.getComponent(node),
+                     (parent >= 0) ? topology.getComponent(parent) : null,
+                     step);
+    }
+
+    /**
+     * @brief Check if a node can run its next step
+     *
+     * @param[in] node The index of the node
+     * @retval TRUE if the next step of the node can start
+     * @retval FALSE otherwise
+     */
+    private boolean canRun(final int node) {
+        final int step = completedSteps.get(node);
+        if (step >= timeSteps || failure.get() != null) return false;
+
+        final int left = topology.getLeft(node);
+        final int right = topology.getRight(node);
+        if (left >= 0 && completedSteps.get(left) <= step) return false;
+        if (right >= 0 && completedSteps.get(right) <= step) return false;
+
+        final int parent = topology.getParent(node);
+        return parent < 0 || step - completedSteps.get(parent) < lookahead;
+    }
+
+    /**
+     * @brief Submit the next step of a node, if it can run
+     *
+     * @description If the <em>busy</em> flag is already set, the thread
+     *              holding it is going to check the node again once its step
+     *              is finished.
+     *
+     * @param[in] node The index of the node
+     */
+    private void trySchedule(final int node) {
+        if (node < 0) return;
+
+        while (canRun(node)) {
+            if (!busy.compareAndSet(node, 0, 1)) return;
+            if (canRun(node)) {
+                executor.execute(new StepSimulation(node));
+                return;
+            }
+            busy.set(node, 0); // the condition changed: release and check again
+        }
+    }
+
+    private class StepSimulation implements Runnable {
+
+        private final int node;
+
+        StepSimulation(final int node) { this.node = node; }
+
+        public void run() {
+            final int parent = topology.getParent(node);
+
+            try {
+                runStep(node, completedSteps.get(node));
+            } catch (RuntimeException exception) {
+                failure.compareAndSet(null, exception);
+                latch.countDown();
+                return;
+            }
+
+            completedSteps.incrementAndGet(node);
+            busy.set(node, 0);
+
+            trySchedule(node); // next step of the node
+            trySchedule(parent); // same step of the parent
+            trySchedule(topology.getLeft(node)); // children waiting on the window
+            trySchedule(topology.getRight(node));
+
+            if (remainingSteps.decrementAndGet() == 0) latch.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Simulation of a tree split among many worker processes
+ *
+ * @description The coordinator splits the tree into disjoint sub-trees,
+ *              starting from the roots and splitting the largest sub-tree
+ *              until there are enough of them to balance the workers. The
+ *              split nodes form the <em>upper</em> part of the tree. The
+ *              sub-trees are assigned to the workers largest first, each to
+ *              the least loaded worker.
+ *              <p>
+ *              Each worker is a new JVM on the same host, with the same class
+ *              path, running ProcessWorker. It connects back to the
+ *              coordinator over loopback TCP, receives its sub-trees and
+ *              returns only the outputs of their roots. The coordinator then
+ *              simulates the upper part of the tree in post-order.
+ *              </p>
+ *              <p>
+ *              The kernel is identified by its class name, so it must be a
+ *              public class with a public no-argument constructor. A
+ *              deterministic kernel gives the same outputs as a simulation in
+ *              a single process, because every node receives the same inputs
+ *              in the same order.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class ProcessSimulation extends Simulation {
+
+    private static final int SUBTREES_PER_WORKER = 4; //!< sub-trees per worker, to balance the load
+    private static final int ACCEPT_TIMEOUT = 60000; //!< milliseconds waiting for a worker to connect
+    private static final int READ_TIMEOUT = 600000; //!< default milliseconds waiting for the outputs of a worker
+
+    private final TreeTopology topology; //!< array view of the tree
+    private final Class<? extends SimulationKernel> kernelClass; //!< kernel of the nodes
+    private final SimulationKernel kernel; //!< kernel of the upper part of the tree
+    private final int timeSteps; //!< number of time-steps of the simulation
+    private final boolean[] upper; //!< true for the nodes simulated by the coordinator
+    private final List<List<Integer>> partitions; //!< roots of the sub-trees of each worker
+    private final int readTimeout; //!< milliseconds waiting for the outputs of a worker
+    @GuardedBy("this") private final double[][] outputs; //!< outputs of the upper and boundary nodes
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The <code>HashMap</code> containing the binary tree
+     * @param[in] workers The maximum number of worker processes
+     * @param[in] kernelClass The class of the kernel of the nodes
+     * @param[in] timeSteps The number of time-steps of the simulation
+     */
+    public ProcessSimulation(final HashMap<Key, Component> tree, final int workers, final Class<? extends SimulationKernel> kernelClass, final int timeSteps) {
+        this(tree, workers, kernelClass, timeSteps, READ_TIMEOUT);
+    }
+
+    /**
+     * @brief Constructor with the timeout of the workers
+     *
+     * @description A worker that sends nothing for <tt>readTimeout</tt>
+     *              milliseconds, e.g. because it hangs, fails the run instead
+     *              of blocking the coordinator forever.
+     *
+     * @param[in] tree The <code>HashMap</code> containing the binary tree
+     * @param[in] workers The maximum number of worker processes
+     * @param[in] kernelClass The class of the kernel of the nodes
+     * @param[in] timeSteps The number of time-steps of the simulation
+     * @param[in] readTimeout The milliseconds waiting for the outputs of a
+     *            worker
+     */
+    public ProcessSimulation(final HashMap<Key, Component> tree, final int workers, final Class<? extends SimulationKernel> kernelClass, final int timeSteps, final int readTimeout) {
+        if (workers < 1) throw new IllegalArgumentException("The workers must be at least 1.");
+        if (timeSteps < 1) throw new IllegalArgumentException("The time-steps must be at least 1.");
+        if (readTimeout < 1) throw new IllegalArgumentException("The read timeout must be positive.");
+
+        this.topology = new TreeTopology(tree);
+        this.kernelClass = kernelClass;
+        this.kernel = ProcessWorker.newKernel(kernelClass.getName());
+        this.timeSteps = timeSteps;
+        this.upper = new boolean[topology.size()];
+        this.partitions = partition(workers);
+        this.outputs = new double[topology.size()][];
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    public synchronized void run() throws InterruptedException {
+        List<Process> processes = new ArrayList<Process>();
+
+        try (ServerSocket server = new ServerSocket(0, partitions.size(), InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(ACCEPT_TIMEOUT);
+
+            for (int w = 0; w < partitions.size(); w++)
+                processes.add(startWorker(server.getLocalPort()));
+
+            List<Socket> sockets = new ArrayList<Socket>();
+            try {
+                for (List<Integer> partition : partitions) { // workers start as soon as they are served
+                    Socket socket = server.accept();
+                    sockets.add(socket);
+                    socket.setSoTimeout(readTimeout);
+                    sendPartition(partition, socket);
+                }
+
+                for (Socket socket : sockets) receiveBoundary(socket);
+            } finally {
+                for (Socket socket : sockets) socket.close();
+            }
+        } catch (IOException exception) {
+            throw new IllegalStateException("Communication with the workers failed", exception);
+        } finally {
+            for (Process process : processes) process.destroy();
+        }
+
+        for (int i = 0; i < topology.size(); i++) // post-order: children come first
+            if (upper[i]) {
+                outputs[i] = new double[timeSteps];
+                compute(kernel, topology.getComponent(i), 0, timeSteps, inputsOf(i), outputs[i]);
+            }
+    }
+
+    /**
+     * @return The number of worker processes
+     */
+    public int getWorkersCount() {
+        return partitions.size();
+    }
+
+    /**
+     * @return The number of nodes simulated by the coordinator
+     */
+    public int getUpperCount() {
+        int count = 0;
+        for (boolean node : upper) if (node) count++;
+        return count;
+    }
+
+    /**
+     * @brief The outputs of a node simulated by the coordinator or of a root
+     *        of a sub-tree simulated by a worker
+     *
+     * @param[in] key The key of the node
+     * @return A copy of the outputs of the node over all the time-steps
+     */
+    public synchronized double[] getOutput(final Key key) {
+        int index = topology.indexOf(key);
+        if (index < 0) throw new IllegalArgumentException("Key " + key.getString() + " not in the tree");
+        if (outputs[index] == null) throw new IllegalArgumentException("Key " + key.getString() + " is internal to a worker");
+
+        return Arrays.copyOf(outputs[index], timeSteps);
+    }
+
+    /**
+     * @brief Split the tree into disjoint sub-trees and assign them
+     *
+     * @param[in] workers The maximum number of workers
+     * @return The roots of the sub-trees of each worker, without empty workers
+     */
+    private List<List<Integer>> partition(final int workers) {
+        final int[] subtreeSize = new int[topology.size()];
+        for (int i = 0; i < topology.size(); i++) { // post-order: children come first
+            subtreeSize[i] = 1;
+            if (topology.getLeft(i) >= 0) subtreeSize[i] += subtreeSize[topology.getLeft(i)];
+            if (topology.getRight(i) >= 0) subtreeSize[i] += subtreeSize[topology.getRight(i)];
+        }
+
+        Comparator<Integer> largestFirst = new Comparator<Integer>() {
+                public int compare(final Integer a, final Integer b) {
+                    return Integer.compare(subtreeSize[b], subtreeSize[a]);
+                }
+            };
+
+        PriorityQueue<Integer> subtrees = new PriorityQueue<Integer>(Math.max(1, topology.size()), largestFirst);
+        for (int root : topology.getRoots()) subtrees.add(root);
+
+        while (!subtrees.isEmpty() && subtrees.size() < workers * SUBTREES_PER_WORKER) {
+            int largest = subtrees.peek();
+            if (subtreeSize[largest] == 1) break; // only leaves left
+
+            subtrees.poll();
+            upper[largest] = true;
+            if (topology.getLeft(largest) >= 0) subtrees.add(topology.getLeft(largest));
+            if (topology.getRight(largest) >= 0) subtrees.add(topology.getRight(largest));
+        }
+
+        List<Integer> sorted = new ArrayList<Integer>(subtrees);
+        Collections.sort(sorted, largestFirst);
+
+        List<List<Integer>> assigned = new ArrayList<List<Integer>>();
+        int[] load = new int[Math.min(workers, sorted.size())];
+        for (int w = 0; w < load.length; w++) assigned.add(new ArrayList<Integer>());
+
+        for (int root : sorted) {
+            int lightest = 0;
+            for (int w = 1; w < load.length; w++)
+                if (load[w] < load[lightest]) lightest = w;
+
+            assigned.get(lightest).add(root);
+            load[lightest] += subtreeSize[root];
+        }
+
+        return assigned;
+    }
+
+    /**
+     * @brief Start a worker JVM with the class path of this one
+     *
+     * @param[in] port The port of the coordinator
+     * @return The worker process
+     * @throws IOException
+     */
+    private Process startWorker(final int port) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                                    ProcessWorker.class.getName(), String.valueOf(port));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    /**
+     * @brief Send the kernel and the nodes of the sub-trees to a worker
+     *
+     * @param[in] partition The roots of the sub-trees of the worker
+     * @param[in] socket The connection with the worker
+     * @throws IOException
+     */
+    private void sendPartition(final List<Integer> partition, final Socket socket) throws IOException {
+        List<Component> nodes = new ArrayList<Component>();
+        for (int root : partition) {
+            List<Integer> stack = new ArrayList<Integer>();
+            stack.add(root);
+            while (!stack.isEmpty()) {
+                int node = stack.remove(stack.size() - 1);
+                nodes.add(topology.getComponent(node));
+                if (topology.getLeft(node) >= 0) stack.add(topology.getLeft(node));
+                if (topology.getRight(node) >= 0) stack.add(topology.getRight(node));
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeUTF(kernelClass.getName());
+        out.writeInt(timeSteps);
+        out.writeInt(Math.max(1, Runtime.getRuntime().availableProcessors() / partitions.size()));
+        out.writeInt(nodes.size());
+        for (Component comp : nodes) ProcessWorker.writeNode(comp, out);
+        out.flush();
+    }
+
+    /**
+     * @brief Receive the outputs of the roots of the sub-trees of a worker
+     *
+     * @param[in] socket The connection with the worker
+     * @throws IOException
+     * @exception IllegalStateException
+     *                if the worker fails or sends nothing within the read
+     *                timeout
+     */
+    private void receiveBoundary(final Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        try {
+            int roots = in.readInt();
+            if (roots == ProcessWorker.FAILURE) throw new IllegalStateException("Worker failed: " + in.readUTF());
+
+            for (int r = 0; r < roots; r++) {
+                int index = topology.indexOf(new Key(in.readUTF()));
+                outputs[index] = new double[timeSteps];
+                for (int k = 0; k < timeSteps; k++) outputs[index][k] = in.readDouble();
+            }
+        } catch (SocketTimeoutException exception) {
+            throw new IllegalStateException("No answer from a worker in " + readTimeout + " milliseconds", exception);
+        }
+    }
+
+    /**
+     * @brief The outputs of the children of a node, the left child first
+     *
+     * @param[in] node The index of the node
+     * @return The inputs of the kernel of the node
+     */
+    private double[][] inputsOf(final int node) {
+        int left = topology.getLeft(node);
+        int right = topology.getRight(node);
+
+        if (left >= 0 && right >= 0) return new double[][] {outputs[left], outputs[right]};
+        else if (left >= 0) return new double[][] {outputs[left]};
+        else if (right >= 0) return new double[][] {outputs[right]};
+        else return new double[0][];
+    }
+
+}
@@ -0,0 +1,284 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.GhostNode;
+import com.wordpress.growworkinghard.riverNe3.composite.Leaf;
+import com.wordpress.growworkinghard.riverNe3.composite.LocalNode;
+import com.wordpress.growworkinghard.riverNe3.composite.Node;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Basin;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Entity;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.GhostBasin;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.Hydrometer;
+import com.wordpress.growworkinghard.riverNe3.composite.entity.River;
+import com.wordpress.growworkinghard.riverNe3.composite.key.BinaryConnections;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+/**
+ * @brief Worker process of a ProcessSimulation
+ *
+ * @description The worker connects to the coordinator on the loopback
+ *              interface, receives the kernel and a set of disjoint
+ *              sub-trees, simulates them with an IncrementalSimulation and
+ *              sends back only the outputs of the roots of its sub-trees,
+ *              which are the <em>boundary</em> nodes of the partition.
+ *              <p>
+ *              The nodes travel in a compact form (type, keys, layer and
+ *              entity, with its kind and its fields) and are rebuilt as the
+ *              same composite#Component and composite#entity#Entity on the
+ *              other side, so the kernels see the same tree in one or many
+ *              processes.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public final class ProcessWorker {
+
+    static final int FAILURE = -1; //!< number of outputs announcing a failure
+
+    private static final byte LEAF = 0;
+    private static final byte NODE = 1;
+    private static final byte LOCAL_NODE = 2;
+    private static final byte GHOST_NODE = 3;
+
+    private static final byte BASIN = 0;
+    private static final byte RIVER = 1;
+    private static final byte GHOST_BASIN = 2;
+    private static final byte HYDROMETER = 3;
+
+    private ProcessWorker() {}
+
+    /**
+     * @brief Entry point of the worker process
+     *
+     * @param[in] args The port of the coordinator on the loopback interface
+     * @throws IOException if the connection with the coordinator fails
+     */
+    public static void main(final String[] args) throws IOException {
+
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        try {
+            String kernelName = in.readUTF();
+            int timeSteps = in.readInt();
+            int threads = in.readInt();
+            int nodes = in.readInt();
+
+            HashMap<Key, Component> tree = new HashMap<Key, Component>();
+            for (int i = 0; i < nodes; i++) {
+                Component comp = readNode(in);
+                tree.put(comp.getConnections().getID(), comp);
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                IncrementalSimulation sim = new IncrementalSimulation(tree, executor, newKernel(kernelName), timeSteps);
+                sim.run();
+
+                TreeTopology topology = sim.getTopology();
+                out.writeInt(topology.getRoots().length);
+                for (int root : topology.getRoots()) {
+                    Key key = topology.getComponent(root).getConnections().getID();
+                    out.writeUTF(key.getString());
+                    for (double value : sim.getOutput(key)) out.writeDouble(value);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        } catch (Exception exception) {
+            out.writeInt(FAILURE);
+            out.writeUTF(String.valueOf(exception));
+        } finally {
+            out.flush();
+            socket.close();
+        }
+
+    }
+
+    /**
+     * @brief Instance of a kernel from its class name
+     *
+     * @param[in] kernelName The binary name of a class implementing
+     *            SimulationKernel with a public no-argument constructor
+     * @return The kernel
+     */
+    static SimulationKernel newKernel(final String kernelName) {
+        try {
+            return Class.forName(kernelName).asSubclass(SimulationKernel.class).getConstructor().newInstance();
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalArgumentException("Cannot instantiate the kernel " + kernelName, exception);
+        }
+    }
+
+    /**
+     * @brief Write the compact description of a node
+     *
+     * @param[in] comp The node
+     * @param[in] out The stream to the worker
+     * @throws IOException
+     */
+    static void writeNode(final Component comp, final DataOutputStream out) throws IOException {
+
+        if (!(comp.getConnections() instanceof BinaryConnections))
+            throw new IllegalArgumentException("Only binary connections can be sent to a worker");
+
+        BinaryConnections connections = (BinaryConnections) comp.getConnections();
+
+        if (comp instanceof Leaf) out.writeByte(LEAF);
+        else if (comp instanceof LocalNode) out.writeByte(LOCAL_NODE);
+        else if (comp instanceof GhostNode) out.writeByte(GHOST_NODE);
+        else out.writeByte(NODE);
+
+        out.writeUTF(connections.getID().getString());
+        writeKey(connections.getLCHILD(), out);
+        writeKey(connections.getRCHILD(), out);
+        out.writeInt(comp.getLayer());
+        writeEntity(comp.getEntity(), out);
+
+    }
+
+    /**
+     * @brief Rebuild a node from its compact description
+     *
+     * @param[in] in The stream from the coordinator
+     * @return The node
+     * @throws IOException
+     */
+    static Component readNode(final DataInputStream in) throws IOException {
+
+        byte type = in.readByte();
+        BinaryConnections connections = new BinaryConnections(new Key(in.readUTF()), readKey(in), readKey(in));
+        int layer = in.readInt();
+        Entity entity = readEntity(in);
+
+        switch (type) {
+        case LEAF:
+            return new Leaf(connections, layer, entity);
+        case LOCAL_NODE:
+            return new LocalNode(connections, layer, entity);
+        case GHOST_NODE:
+            return new GhostNode(connections, layer, entity);
+        case NODE:
+            return new Node(connections, layer, entity);
+        default:
+            throw new IOException("Unknown node type " + type);
+        }
+
+    }
+
+    /**
+     * @brief Write the kind and the fields of an entity
+     *
+     * @param[in] entity The entity of a node
+     * @param[in] out The stream to the worker
+     * @throws IOException
+     */
+    private static void writeEntity(final Entity entity, final DataOutputStream out) throws IOException {
+
+        if (entity instanceof Basin) {
+            Double area = ((Basin) entity).getBasinArea();
+            out.writeByte(BASIN);
+            writePoint(entity.getStartPoint(), out);
+            writePoint(entity.getEndPoint(), out);
+            out.writeBoolean(area != null);
+            if (area != null) out.writeDouble(area);
+        } else if (entity instanceof River) {
+            out.writeByte(RIVER);
+            writePoint(entity.getStartPoint(), out);
+            writePoint(entity.getEndPoint(), out);
+        } else if (entity instanceof GhostBasin) {
+            out.writeByte(GHOST_BASIN);
+            writePoint(entity.getStartPoint(), out);
+            writePoint(entity.getEndPoint(), out);
+        } else if (entity instanceof Hydrometer) {
+            out.writeByte(HYDROMETER);
+            writePoint(entity.getPoint(), out);
+        } else {
+            String name = (entity != null) ? entity.getClass().getName() : "null";
+            throw new IllegalArgumentException("The entity " + name + " cannot be sent to a worker");
+        }
+
+    }
+
+    /**
+     * @brief Rebuild an entity from its kind and its fields
+     *
+     * @param[in] in The stream from the coordinator
+     * @return The entity
+     * @throws IOException
+     */
+    private static Entity readEntity(final DataInputStream in) throws IOException {
+
+        byte kind = in.readByte();
+
+        switch (kind) {
+        case BASIN: {
+            River river = new River(readPoint(in), readPoint(in));
+            return new Basin(river, in.readBoolean() ? in.readDouble() : null);
+        }
+        case RIVER:
+            return new River(readPoint(in), readPoint(in));
+        case GHOST_BASIN:
+            return new GhostBasin(readPoint(in), readPoint(in));
+        case HYDROMETER:
+            return new Hydrometer(readPoint(in));
+        default:
+            throw new IOException("Unknown entity kind " + kind);
+        }
+
+    }
+
+    private static void writeKey(final Key key, final DataOutputStream out) throws IOException {
+        out.writeBoolean(key != null);
+        if (key != null) out.writeUTF(key.getString());
+    }
+
+    private static Key readKey(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Key(in.readUTF()) : null;
+    }
+
+    private static void writePoint(final Coordinate2D point, final DataOutputStream out) throws IOException {
+        out.writeDouble(point.x);
+        out.writeDouble(point.y);
+    }
+
+    private static Coordinate2D readPoint(final DataInputStream in) throws IOException {
+        return new Coordinate2D(in.readDouble(), in.readDouble());
+    }
+
+}
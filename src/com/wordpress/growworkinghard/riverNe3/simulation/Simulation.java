@@ -0,0 +1,223 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+/**
+ * @brief Abstract class to apply the <strong>Strategy Pattern</strong> to the
+ *        execution of the simulations
+ *
+ * @description Each execution mode (e.g. the ready queue of RunSimulations or
+ *              the work stealing of ForkJoinSimulation) extends this class, so
+ *              the mode can be selected simply allocating the desired
+ *              strategy, while the rest of the code only sees a
+ *              <tt>Simulation</tt>. Whatever the strategy is, a node is
+ *              simulated only once all its children have been simulated, thus
+ *              every mode gives the same results.
+ *              <p>
+ *              The simulation of a node must always be run through
+ *              Simulation#simulate(final Component, final Component), which
+ *              is the unique point where each strategy hands a node to its
+ *              kernel. It is also where a Tracer, if any, records the
+ *              execution of the node.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public abstract class Simulation {
+
+    private volatile Tracer tracer; //!< tracer of the executions, <code>null</code> if disabled
+
+    /**
+     * @brief Run the simulation of the whole tree
+     *
+     * @description The method returns when the simulation of each and every
+     *              node is finished.
+     */
+    abstract public void run() throws InterruptedException;
+
+    /**
+     * @brief Run the simulation of a single node
+     *
+     * @param[in] comp The node to simulate
+     * @param[in] parent The parent of the node, <code>null</code> for the
+     *            root of the tree
+     */
+    protected void simulate(final Component comp, final Component parent) {
+        final Tracer current = tracer;
+        if (current == null) {
+            comp.runSimulation(parent);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            comp.runSimulation(parent);
+        } finally {
+            current.record(comp, start, System.nanoTime());
+        }
+    }
+
+    /**
+     * @brief Run a kernel on a block of time-steps of a node
+     *
+     * @description The counterpart of
+     *              Simulation#simulate(final Component, final Component) for
+     *              the strategies using a SimulationKernel.
+     *
+     * @param[in] kernel The kernel of the node
+     * @param[in] comp The node to simulate
+     * @param[in] firstStep The first time-step of the block
+     * @param[in] steps The number of time-steps of the block
+     * @param[in] inputs The output buffers of the children
+     * @param[out] output The output buffer of the node
+     */
+    protected void compute(final SimulationKernel kernel, final Component comp, final int firstStep, final int steps, final double[][] inputs, final double[] output) {
+        final Tracer current = tracer;
+        if (current == null) {
+            kernel.compute(comp, firstStep, steps, inputs, output);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            kernel.compute(comp, firstStep, steps, inputs, output);
+        } finally {
+            current.record(comp, start, System.nanoTime());
+        }
+    }
+
+    /**
+     * @brief Run an ensemble kernel on all the members of a node
+     *
+     * @description The counterpart of
+     *              Simulation#simulate(final Component, final Component) for
+     *              the strategies using an EnsembleKernel.
+     *
+     * @param[in] kernel The kernel of the node
+     * @param[in] comp The node to simulate
+     * @param[in] parameters The parameters of the members
+     * @param[in] inputs The outputs of the children
+     * @param[out] outputs The outputs of the node, one position per member
+     */
+    protected void compute(final EnsembleKernel kernel, final Component comp, final double[][] parameters, final double[][] inputs, final double[] outputs) {
+        final Tracer current = tracer;
+        if (current == null) {
+            kernel.compute(comp, parameters, inputs, outputs);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            kernel.compute(comp, parameters, inputs, outputs);
+        } finally {
+            current.record(comp, start, System.nanoTime());
+        }
+    }
+
+    /**
+     * @brief Attach a tracer to the simulation
+     *
+     * @description Must be called before <code>run()</code>.
+     *
+     * @param[in] tracer The tracer, <code>null</code> to disable the tracing
+     */
+    public void setTracer(final Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * @return The tracer of the simulation, <code>null</code> if disabled
+     */
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * @brief Retrieve the parent of a node
+     *
+     * @param[in] tree The tree structure
+     * @param[in] comp The node
+     * @return The parent of the node, <code>null</code> if the node is a root
+     */
+    protected static Component parentOf(final Map<Key, Component> tree, final Component comp) {
+        return tree.get(comp.getConnections().getPARENT());
+    }
+
+    /**
+     * @brief Count the children of a node stored in the tree
+     *
+     * @description Only the children actually stored in the tree are counted,
+     *              so a node is never waiting for a child that will never be
+     *              simulated.
+     *
+     * @param[in] tree The tree structure
+     * @param[in] comp The node
+     * @return The number of children of the node stored in the tree
+     */
+    protected static int childrenOf(final Map<Key, Component> tree, final Component comp) {
+        int children = 0;
+
+        for (Key childKey : comp.getConnections().getChildren())
+            if (tree.containsKey(childKey)) children++;
+
+        return children;
+    }
+
+    /**
+     * @brief Retrieve the roots of the tree
+     *
+     * @description A root is a node whose parent is not stored in the tree.
+     *              For a single river network there is only one root (the
+     *              stream with number 1 in the Pfafstetter numbering).
+     *
+     * @param[in] tree The tree structure
+     * @return The <tt>List</tt> of the roots
+     */
+    protected static List<Component> rootsOf(final Map<Key, Component> tree) {
+        List<Component> roots = new ArrayList<Component>();
+
+        for (Component comp : tree.values())
+            if (!tree.containsKey(comp.getConnections().getPARENT())) roots.add(comp);
+
+        return roots;
+    }
+
+    /**
+     * @brief Validation of the input tree
+     *
+     * @param[in] tree The tree structure
+     * @exception NullPointerException
+     *                if the tree is <code>null</code>
+     */
+    protected static void validateTree(final Map<Key, Component> tree) {
+        if (tree == null)
+            throw new NullPointerException("The input tree cannot be null.");
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+
+/**
+ * @brief Interface of the kernels simulating a node over a block of time-steps
+ *
+ * @description The kernel of a node reads the outputs of its children and
+ *              writes its own output. Outputs are primitive
+ *              <code>double</code> buffers allocated once by the engine: the
+ *              kernel receives the buffers of the children directly, so no
+ *              copy and no boxing is done in passing the data from a child to
+ *              its parent.
+ *              <p>
+ *              The value of the time-step <tt>firstStep + k</tt> is stored in
+ *              the position <tt>k</tt> of each buffer. The kernel must write
+ *              only the first <tt>steps</tt> positions of <tt>output</tt> and
+ *              must never modify the buffers of the children.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public interface SimulationKernel {
+
+    /**
+     * @brief Simulate a node over a block of time-steps
+     *
+     * @param[in] node The node to simulate
+     * @param[in] firstStep The first time-step of the block
+     * @param[in] steps The number of time-steps of the block
+     * @param[in] inputs The output buffers of the children, the left child
+     *            first; empty for a leaf
+     * @param[out] output The output buffer of the node
+     */
+    public void compute(final Component node, final int firstStep, final int steps, final double[][] inputs, final double[] output);
+
+}
@@ -0,0 +1,59 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+
+/**
+ * @brief Interface of the kernels keeping a state among the blocks
+ *
+ * @description A kernel with a memory of the past time-steps (e.g. the water
+ *              stored in a reservoir) implements this interface, so its state
+ *              can be saved in a Checkpoint and restored when a simulation is
+ *              resumed.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public interface StatefulKernel extends SimulationKernel {
+
+    /**
+     * @brief Copy of the state of a node
+     *
+     * @description Called by the thread simulating the node, right after a
+     *              block, so it must be short: it stalls the simulation of
+     *              that node only.
+     *
+     * @param[in] node The node
+     * @return A copy of the state of the node, never <code>null</code>
+     */
+    public double[] saveState(final Component node);
+
+    /**
+     * @brief Restore the state of a node
+     *
+     * @param[in] node The node
+     * @param[in] state The state previously returned by
+     *            <code>saveState</code>
+     */
+    public void restoreState(final Component node, final double[] state);
+
+}
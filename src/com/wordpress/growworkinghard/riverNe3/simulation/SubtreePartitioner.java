@@ -0,0 +1,270 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * @brief Partition of the tree in connected sub-tree clusters
+ *
+ * @description When the kernel of a node takes few milliseconds, scheduling
+ *              each node as a task costs more than the simulation itself. This
+ *              class groups the nodes in <em>clusters</em>: connected sub-trees
+ *              whose estimated cost is close to a target <em>grain
+ *              size</em>. Each cluster can then be simulated sequentially, in
+ *              post-order, by a single task.
+ *              <p>
+ *              The algorithm is greedy and runs in \f$O(N)\f$. The tree is
+ *              visited in post-order accumulating the cost of the nodes not
+ *              assigned yet: as soon as the accumulated cost of a node reaches
+ *              the grain size, the node is cut from its parent and becomes
+ *              the top of a new cluster with all its unassigned descendants.
+ *              Each cluster costs less than twice the grain size plus the cost
+ *              of its top node, the only exception being the cluster of the
+ *              root, which collects what is left.
+ *              </p>
+ *              <p>
+ *              Clusters are numbered in post-order as well: child clusters
+ *              have lower numbers than their parent cluster.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@Immutable
+public final class SubtreePartitioner {
+
+    private final TreeTopology topology; //!< array view of the tree
+    private final double grainSize; //!< target cost of each cluster
+    private final int[] clusterOf; //!< cluster of each node
+    private final int[][] members; //!< nodes of each cluster, in post-order
+    private final int[] clusterParent; //!< parent cluster of each cluster, -1 for the root cluster
+    private final double[] clusterCost; //!< estimated cost of each cluster
+
+    /**
+     * @brief Constructor
+     *
+     * @description Each node is estimated with unitary cost, so the grain size
+     *              is the number of nodes in each cluster.
+     *
+     * @param[in] tree The tree structure
+     * @param[in] grainSize The target cost of each cluster
+     */
+    public SubtreePartitioner(final Map<Key, Component> tree, final double grainSize) {
+        this(new TreeTopology(tree), grainSize, new ToDoubleFunction<Component>() {
+                public double applyAsDouble(final Component comp) { return 1.0; }
+            });
+    }
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] topology The array view of the tree
+     * @param[in] grainSize The target cost of each cluster
+     * @param[in] costModel The estimated cost of each node
+     */
+    public SubtreePartitioner(final TreeTopology topology, final double grainSize, final ToDoubleFunction<Component> costModel) {
+        if (topology == null) throw new NullPointerException("The topology cannot be null.");
+        if (costModel == null) throw new NullPointerException("The cost model cannot be null.");
+        if (grainSize <= 0) throw new IllegalArgumentException("The grain size must be positive.");
+
+        this.topology = topology;
+        this.grainSize = grainSize;
+
+        final int size = topology.size();
+        final boolean[] cut = new boolean[size];
+        final double[] openCost = new double[size];
+        int clusters = 0;
+
+        // bottom-up: decide where the tree is cut
+        for (int i = 0; i < size; i++) {
+            double cost = costModel.applyAsDouble(topology.getComponent(i));
+            if (cost < 0) throw new IllegalArgumentException("Negative cost for node " + topology.getComponent(i));
+
+            openCost[i] = cost + openCostOf(topology.getLeft(i), cut, openCost)
+                               + openCostOf(topology.getRight(i), cut, openCost);
+
+            if (openCost[i] >= grainSize || topology.getParent(i) < 0) {
+                cut[i] = true;
+                clusters++;
+            }
+        }
+
+        // numbering of the clusters in post-order of their top node
+        final int[] clusterOfTop = new int[size];
+        this.clusterCost = new double[clusters];
+        int next = 0;
+        for (int i = 0; i < size; i++)
+            if (cut[i]) {
+                clusterCost[next] = openCost[i];
+                clusterOfTop[i] = next++;
+            }
+
+        // top-down: each node belongs to the cluster of its nearest cut ancestor
+        this.clusterOf = new int[size];
+        final int[] membersCount = new int[clusters];
+        for (int i = size - 1; i >= 0; i--) {
+            clusterOf[i] = (cut[i]) ? clusterOfTop[i] : clusterOf[topology.getParent(i)];
+            membersCount[clusterOf[i]]++;
+        }
+
+        this.members = new int[clusters][];
+        for (int c = 0; c < clusters; c++) members[c] = new int[membersCount[c]];
+
+        final int[] filled = new int[clusters];
+        for (int i = 0; i < size; i++) { // increasing indices keep the post-order
+            int c = clusterOf[i];
+            members[c][filled[c]++] = i;
+        }
+
+        this.clusterParent = new int[clusters];
+        for (int c = 0; c < clusters; c++) {
+            int parent = topology.getParent(getTop(c));
+            clusterParent[c] = (parent >= 0) ? clusterOf[parent] : -1;
+        }
+    }
+
+    /**
+     * @return The array view of the partitioned tree
+     */
+    public TreeTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return The target cost of each cluster
+     */
+    public double getGrainSize() {
+        return grainSize;
+    }
+
+    /**
+     * @return The number of clusters
+     */
+    public int getClusterCount() {
+        return members.length;
+    }
+
+    /**
+     * @param[in] node The index of the node in the topology
+     * @return The cluster of the node
+     */
+    public int getClusterOf(final int node) {
+        return clusterOf[node];
+    }
+
+    /**
+     * @param[in] cluster The cluster
+     * @return A copy of the indices of the nodes of the cluster, in post-order
+     */
+    public int[] getMembers(final int cluster) {
+        return Arrays.copyOf(members[cluster], members[cluster].length);
+    }
+
+    /**
+     * @param[in] cluster The cluster
+     * @return The number of nodes of the cluster
+     */
+    public int getMembersCount(final int cluster) {
+        return members[cluster].length;
+    }
+
+    /**
+     * @param[in] cluster The cluster
+     * @param[in] position The position of the node in the cluster
+     * @return The index of the node in the topology
+     */
+    public int getMember(final int cluster, final int position) {
+        return members[cluster][position];
+    }
+
+    /**
+     * @param[in] cluster The cluster
+     * @return The index of the top node of the cluster, i.e. the last one in
+     *         post-order
+     */
+    public int getTop(final int cluster) {
+        return members[cluster][members[cluster].length - 1];
+    }
+
+    /**
+     * @param[in] cluster The cluster
+     * @return The parent cluster, -1 for the cluster of a root
+     */
+    public int getClusterParent(final int cluster) {
+        return clusterParent[cluster];
+    }
+
+    /**
+     * @param[in] cluster The cluster
+     * @return The estimated cost of the cluster
+     */
+    public double getClusterCost(final int cluster) {
+        return clusterCost[cluster];
+    }
+
+    /**
+     * @brief Imbalance of the partition
+     *
+     * @return The ratio between the most expensive cluster and the mean cost
+     *         of the clusters (1.0 is a perfect balance)
+     */
+    public double getImbalance() {
+        if (clusterCost.length == 0) return 1.0;
+
+        double max = 0.0;
+        double total = 0.0;
+        for (double cost : clusterCost) {
+            max = Math.max(max, cost);
+            total += cost;
+        }
+
+        return (total > 0) ? max * clusterCost.length / total : 1.0;
+    }
+
+    /**
+     * @brief Simply overriding of the <code>toString</code> method
+     *
+     * @return The report of the partition
+     */
+    @Override
+    public String toString() {
+        String tmp = this.getClass().getSimpleName();
+        tmp += " ==> nodes = " + topology.size();
+        tmp += " - grain size = " + grainSize;
+        tmp += " - clusters = " + getClusterCount();
+        tmp += " - imbalance = " + getImbalance();
+
+        return tmp;
+    }
+
+    private static double openCostOf(final int child, final boolean[] cut, final double[] openCost) {
+        return (child >= 0 && !cut[child]) ? openCost[child] : 0.0;
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Run the simulation of each node on its own thread
+ *
+ * @description This mode is designed for kernels that spend most of their time
+ *              blocked on I/O (e.g. reading the forcing files of the HRU and
+ *              writing the results). Each node is submitted to a
+ *              <em>thread-per-task</em> executor as soon as all its children
+ *              have been simulated, so the I/O of thousands of nodes can
+ *              overlap without a pool sized on the number of processors.
+ *              <p>
+ *              The simulation of a node is split in three phases: the input
+ *              is read by ThreadPerNodeSimulation#read(final Component), the
+ *              node is simulated by
+ *              Simulation#simulate(final Component, final Component) and the
+ *              output is written by ThreadPerNodeSimulation#write(final Component).
+ *              Only the CPU phase is bounded by a <tt>Semaphore</tt>, in order
+ *              not to oversubscribe the cores with the work of the kernels,
+ *              while the I/O of any number of nodes can be in flight. Threads
+ *              waiting for a permit are parked.
+ *              </p>
+ *              <p>
+ *              When the running JVM provides <em>virtual threads</em> (Java
+ *              21 or newer) the default executor allocates a virtual thread
+ *              per node, otherwise it falls back on a cached pool of daemon
+ *              threads.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class ThreadPerNodeSimulation extends Simulation {
+
+    private final HashMap<Key, Component> tree; //!< tree structure, only read
+    private final HashMap<Key, AtomicInteger> pendingChildren; //!< number of children of each node not simulated yet
+    private final AtomicInteger remainingNodes; //!< nodes not simulated yet
+    private final AtomicReference<RuntimeException> failure; //!< first exception thrown by a simulation
+    private final CountDownLatch latch; //!< released when the simulation ends
+    private final Semaphore permits; //!< bound on the nodes in the CPU phase at the same time
+    private final ExecutorService executor; //!< thread-per-task executor
+    private final boolean ownedExecutor; //!< <code>true</code> if the executor has been allocated here
+
+    /**
+     * @brief Constructor
+     *
+     * @description The executor is allocated by
+     *              ThreadPerNodeSimulation#newThreadPerTaskExecutor() and it is
+     *              shut down at the end of ThreadPerNodeSimulation#run().
+     *
+     * @param[in] tree The tree structure
+     * @param[in] maxConcurrentSimulations The maximum number of nodes in
+     *            the CPU phase at the same time
+     */
+    public ThreadPerNodeSimulation(final HashMap<Key, Component> tree, final int maxConcurrentSimulations) {
+        this(tree, newThreadPerTaskExecutor(), maxConcurrentSimulations, true);
+    }
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] executor The executor, which should allocate a new thread per
+     *            task
+     * @param[in] maxConcurrentSimulations The maximum number of nodes in
+     *            the CPU phase at the same time
+     */
+    public ThreadPerNodeSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final int maxConcurrentSimulations) {
+        this(tree, executor, maxConcurrentSimulations, false);
+    }
+
+    private ThreadPerNodeSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final int maxConcurrentSimulations, final boolean ownedExecutor) {
+        validateTree(tree); // precondition
+        if (executor == null) throw new NullPointerException("The executor cannot be null.");
+        if (maxConcurrentSimulations <= 0)
+            throw new IllegalArgumentException("The number of concurrent simulations must be positive.");
+
+        this.tree = new HashMap<Key, Component>(tree);
+        this.pendingChildren = new HashMap<Key, AtomicInteger>(tree.size());
+        this.remainingNodes = new AtomicInteger(tree.size());
+        this.failure = new AtomicReference<RuntimeException>();
+        this.latch = new CountDownLatch(1);
+        this.permits = new Semaphore(maxConcurrentSimulations);
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+
+        for (Component comp : this.tree.values())
+            pendingChildren.put(comp.getConnections().getID(),
+                                new AtomicInteger(childrenOf(this.tree, comp)));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    public void run() throws InterruptedException {
+        if (tree.isEmpty()) latch.countDown(); // nothing to simulate
+
+        List<Component> leaves = new ArrayList<Component>(); // collected before any counter moves
+        for (Component comp : tree.values())
+            if (pendingChildren.get(comp.getConnections().getID()).get() == 0)
+                leaves.add(comp);
+
+        for (Component comp : leaves) executor.execute(new NodeSimulation(comp));
+
+        try {
+            latch.await();
+        } finally {
+            if (ownedExecutor) executor.shutdown();
+        }
+
+        if (failure.get() != null) throw failure.get();
+    }
+
+    /**
+     * @brief Allocate an executor which starts a new thread for each task
+     *
+     * @description <tt>Executors.newVirtualThreadPerTaskExecutor()</tt> is
+     *              looked up by reflection, because it is available only from
+     *              Java 21.
+     *
+     * @return The thread-per-task executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) { // virtual threads not available
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    public Thread newThread(final Runnable task) {
+                        Thread thread = new Thread(task, "node-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+    }
+
+    /**
+     * @brief Read the input of a node
+     *
+     * @description Override this method to run the I/O preceding the
+     *              simulation of the node. It is called without holding a
+     *              permit, so it does not count against the maximum number of
+     *              concurrent simulations. By default nothing is read.
+     *
+     * @param[in] node The node to simulate
+     */
+    protected void read(final Component node) {}
+
+    /**
+     * @brief Write the output of a node
+     *
+     * @description Override this method to run the I/O following the
+     *              simulation of the node. As
+     *              ThreadPerNodeSimulation#read(final Component), it is called
+     *              without holding a permit. By default nothing is written.
+     *
+     * @param[in] node The simulated node
+     */
+    protected void write(final Component node) {}
+
+    /**
+     * @brief Release the parent once the simulation of the node is finished
+     *
+     * @param[in] parent The parent of the simulated node
+     */
+    private void complete(final Component parent) {
+        if (failure.get() != null) return; // simulation already aborted
+
+        if (parent != null &&
+            pendingChildren.get(parent.getConnections().getID()).decrementAndGet() == 0)
+            executor.execute(new NodeSimulation(parent));
+
+        if (remainingNodes.decrementAndGet() == 0) latch.countDown();
+    }
+
+    private class NodeSimulation implements Runnable {
+
+        private final Component node;
+
+        NodeSimulation(final Component node) { this.node = node; }
+
+        public void run() {
+            Component parent = parentOf(tree, node);
+
+            try {
+                read(node);
+                permits.acquire(); // parked until a slot is available
+                try {
+                    simulate(node, parent);
+                } finally {
+                    permits.release();
+                }
+                write(node);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new IllegalStateException("Simulation interrupted", e));
+                latch.countDown();
+                return;
+            } catch (RuntimeException exception) {
+                failure.compareAndSet(null, exception);
+                latch.countDown();
+                return;
+            }
+
+            complete(parent);
+        }
+
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Tracer of the execution of the nodes
+ *
+ * @description The events are recorded in a fixed set of ring buffers, one
+ *              per available processor, and each thread writes in the ring
+ *              selected by its id. Each event is a small immutable object
+ *              stored in its slot by a single atomic write, so two threads
+ *              sharing a ring never mix their fields, not even when one
+ *              overwrites the slot of the other after a wraparound.
+ *              Recording an event costs two <code>System.nanoTime()</code>,
+ *              an atomic increment and the store of the event, without any
+ *              lock. The memory is bounded by the number of rings and not by
+ *              the number of threads, so a thread per node (e.g. the virtual
+ *              threads of ThreadPerNodeSimulation) does not allocate a ring
+ *              per node. When a buffer is full the oldest events are
+ *              overwritten and counted as dropped.
+ *              <p>
+ *              At the end of the run the events are dumped in the <em>Chrome
+ *              trace-event</em> format (one complete event per execution,
+ *              with the key and the type of the node), which can be opened in
+ *              <tt>chrome://tracing</tt> or Perfetto to inspect the
+ *              parallelism and the stragglers.
+ *              </p>
+ *              <p>
+ *              The tracer is attached to a strategy with
+ *              Simulation#setTracer(final Tracer). Without a tracer the
+ *              simulation of a node costs a single field read more.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public final class Tracer {
+
+    private final int capacity; //!< events of each ring buffer
+    private final Ring[] rings; //!< ring buffers, shared by the threads with the same id modulo their number
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] capacity The maximum number of events kept in each ring
+     *            buffer; there is a ring per available processor
+     */
+    public Tracer(final int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("The capacity must be positive.");
+
+        this.capacity = capacity;
+        this.rings = new Ring[Runtime.getRuntime().availableProcessors()];
+        for (int r = 0; r < rings.length; r++) rings[r] = new Ring(capacity);
+    }
+
+    /**
+     * @brief Record the execution of a node on the current thread
+     *
+     * @param[in] comp The node
+     * @param[in] start The <code>System.nanoTime()</code> at the beginning
+     * @param[in] end The <code>System.nanoTime()</code> at the end
+     */
+    public void record(final Component comp, final long start, final long end) {
+        final Thread thread = Thread.currentThread();
+        rings[(int) (thread.getId() % rings.length)].add(comp, thread, start, end);
+    }
+
+    /**
+     * @return The number of events kept in the buffers
+     */
+    public long getEventsCount() {
+        long events = 0;
+        for (Ring r : rings) events += Math.min(r.count.get(), capacity);
+        return events;
+    }
+
+    /**
+     * @return The number of events overwritten because a buffer was full
+     */
+    public long getDroppedEvents() {
+        long dropped = 0;
+        for (Ring r : rings) dropped += Math.max(0, r.count.get() - capacity);
+        return dropped;
+    }
+
+    /**
+     * @brief Write the events in Chrome trace-event format
+     *
+     * @description Must be called once the simulation is finished. Times are
+     *              in microseconds from the first recorded event.
+     *
+     * @param[in] filePath The path of the JSON file
+     * @throws IOException
+     */
+    public void writeChromeTrace(final String filePath) throws IOException {
+        long origin = Long.MAX_VALUE;
+        Map<Long, String> threads = new LinkedHashMap<Long, String>();
+        for (Ring r : rings)
+            for (int i = r.first(); i < r.last(); i++) {
+                Event event = r.events.get(i % capacity);
+                origin = Math.min(origin, event.start);
+                threads.put(event.threadId, event.threadName);
+            }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            writer.write("{\"traceEvents\":[");
+            boolean first = true;
+
+            for (Map.Entry<Long, String> thread : threads.entrySet()) {
+                if (!first) writer.write(',');
+                first = false;
+                writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey()
+                             + ",\"args\":{\"name\":\"" + escape(thread.getValue()) + "\"}}");
+            }
+
+            for (Ring r : rings) {
+                for (int i = r.first(); i < r.last(); i++) {
+                    Event event = r.events.get(i % capacity);
+                    Component comp = event.node;
+                    if (!first) writer.write(',');
+                    first = false;
+                    writer.write("\n{\"name\":\"" + comp.getConnections().getID().getDouble().longValue()
+                                 + "\",\"cat\":\"" + typeOf(comp)
+                                 + "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + event.threadId
+                                 + ",\"ts\":" + (event.start - origin) / 1e3
+                                 + ",\"dur\":" + (event.end - event.start) / 1e3
+                                 + ",\"args\":{\"key\":\"" + comp.getConnections().getID().getString()
+                                 + "\",\"layer\":" + comp.getLayer() + "}}");
+                }
+            }
+
+            writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        }
+    }
+
+    /**
+     * @param[in] comp The node
+     * @return The name of the type of the node, or of the type it extends
+     *         for an anonymous class
+     */
+    private static String typeOf(final Component comp) {
+        Class<?> type = comp.getClass();
+        while (type.isAnonymousClass()) type = type.getSuperclass();
+        return type.getSimpleName();
+    }
+
+    private static String escape(final String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * @brief Execution of a node
+     */
+    private static final class Event {
+
+        final long threadId;
+        final String threadName;
+        final Component node;
+        final long start;
+        final long end;
+
+        Event(final Component node, final Thread thread, final long start, final long end) {
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+            this.node = node;
+            this.start = start;
+            this.end = end;
+        }
+
+    }
+
+    /**
+     * @brief Ring buffer shared by a subset of the threads
+     *
+     * @description Each writer claims its slot with an atomic increment and
+     *              stores a whole Event in it; the ring is read after the
+     *              simulation, whose end publishes the writes.
+     */
+    private static final class Ring {
+
+        final AtomicReferenceArray<Event> events;
+        final AtomicLong count; //!< events recorded, including the overwritten ones
+
+        Ring(final int capacity) {
+            this.events = new AtomicReferenceArray<Event>(capacity);
+            this.count = new AtomicLong();
+        }
+
+        void add(final Component comp, final Thread thread, final long startTime, final long endTime) {
+            events.set((int) (count.getAndIncrement() % events.length()), new Event(comp, thread, startTime, endTime));
+        }
+
+        int first() {
+            return (int) (Math.max(0L, count.get() - events.length()) % events.length());
+        }
+
+        int last() {
+            return first() + (int) Math.min(count.get(), events.length());
+        }
+
+    }
+
+}
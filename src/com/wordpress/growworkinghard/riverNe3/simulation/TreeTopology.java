@@ -0,0 +1,254 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * @brief Array based view of the topology of a binary tree
+ *
+ * @description The <tt>HashMap</tt> of composite#key#Key and
+ *              composite#Component is the right structure to build and
+ *              decorate the tree, but the schedulers need to move from a node
+ *              to its parent and children millions of times. This class
+ *              computes once an <em>index</em> for each node and stores the
+ *              connections in plain <code>int</code> arrays, so each step
+ *              costs an array access instead of a hash lookup on a
+ *              composite#key#Key.
+ *              <p>
+ *              Indices are assigned in <strong>Post-Order</strong>: the
+ *              children of a node always have a lower index than the node
+ *              itself, so an increasing loop over the indices is a valid
+ *              sequential simulation order.
+ *              </p>
+ *              <p>
+ *              This class is <em>ThreadSafe</em> because it is
+ *              <em>Immutable</em>: arrays are never exposed.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@Immutable
+public final class TreeTopology {
+
+    private final Component[] nodes; //!< nodes in post-order
+    private final int[] parent; //!< index of the parent, -1 for a root
+    private final int[] left; //!< index of the left child, -1 if absent
+    private final int[] right; //!< index of the right child, -1 if absent
+    private final int[] height; //!< nodes in the longest path from the node to a leaf
+    private final int[] roots; //!< indices of the roots
+    private final HashMap<Key, Integer> indices; //!< index of each key
+
+    /**
+     * @brief Constructor
+     *
+     * @description The post-order is computed with an explicit stack, because
+     *              the main stem of a river network can be too deep for a
+     *              recursive visit.
+     *
+     * @param[in] tree The tree structure
+     */
+    public TreeTopology(final Map<Key, Component> tree) {
+        if (tree == null) throw new NullPointerException("The input tree cannot be null.");
+
+        final int size = tree.size();
+        this.nodes = new Component[size];
+        this.parent = new int[size];
+        this.left = new int[size];
+        this.right = new int[size];
+        this.height = new int[size];
+        this.indices = new HashMap<Key, Integer>(size * 2);
+
+        List<Component> rootNodes = new ArrayList<Component>();
+        for (Component comp : tree.values())
+            if (!tree.containsKey(comp.getConnections().getPARENT())) rootNodes.add(comp);
+
+        int next = 0;
+        for (Component root : rootNodes)
+            next = postOrder(tree, root, next);
+
+        if (next != size) {
+            String message = "The tree contains " + (size - next);
+            message += " nodes not connected to any root.";
+            throw new IllegalArgumentException(message);
+        }
+
+        this.roots = new int[rootNodes.size()];
+        for (int i = 0; i < roots.length; i++)
+            roots[i] = indices.get(rootNodes.get(i).getConnections().getID());
+
+        computeConnections();
+    }
+
+    /**
+     * @return The number of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @param[in] index The index of the node
+     * @return The node
+     */
+    public Component getComponent(final int index) {
+        return nodes[index];
+    }
+
+    /**
+     * @param[in] key The key of the node
+     * @return The index of the node, -1 if the key is not in the tree
+     */
+    public int indexOf(final Key key) {
+        Integer index = indices.get(key);
+        return (index != null) ? index : -1;
+    }
+
+    /**
+     * @param[in] index The index of the node
+     * @return The index of the parent, -1 for a root
+     */
+    public int getParent(final int index) {
+        return parent[index];
+    }
+
+    /**
+     * @param[in] index The index of the node
+     * @return The index of the left child, -1 if absent
+     */
+    public int getLeft(final int index) {
+        return left[index];
+    }
+
+    /**
+     * @param[in] index The index of the node
+     * @return The index of the right child, -1 if absent
+     */
+    public int getRight(final int index) {
+        return right[index];
+    }
+
+    /**
+     * @param[in] index The index of the node
+     * @return The number of children of the node stored in the tree
+     */
+    public int getChildrenCount(final int index) {
+        return ((left[index] >= 0) ? 1 : 0) + ((right[index] >= 0) ? 1 : 0);
+    }
+
+    /**
+     * @brief Height of the sub-tree
+     *
+     * @param[in] index The index of the node
+     * @return The number of nodes in the longest path from the node to a leaf,
+     *         the node included
+     */
+    public int getHeight(final int index) {
+        return height[index];
+    }
+
+    /**
+     * @return A copy of the indices of the roots
+     */
+    public int[] getRoots() {
+        return Arrays.copyOf(roots, roots.length);
+    }
+
+    /**
+     * @brief Assign the post-order indices of a sub-tree
+     *
+     * @param[in] tree The tree structure
+     * @param[in] root The root of the sub-tree
+     * @param[in] next The first free index
+     * @return The first free index after the sub-tree
+     */
+    private int postOrder(final Map<Key, Component> tree, final Component root, int next) {
+        Deque<Component> stack = new ArrayDeque<Component>();
+        Deque<Boolean> expanded = new ArrayDeque<Boolean>();
+        stack.push(root);
+        expanded.push(false);
+
+        while (!stack.isEmpty()) {
+            Component comp = stack.pop();
+            if (expanded.pop()) {
+                nodes[next] = comp;
+                indices.put(comp.getConnections().getID(), next);
+                next++;
+            } else {
+                stack.push(comp);
+                expanded.push(true);
+                // right pushed first, so the left sub-tree is visited first
+                pushChild(tree, comp.getConnections().getRCHILD(), stack, expanded);
+                pushChild(tree, comp.getConnections().getLCHILD(), stack, expanded);
+            }
+        }
+
+        return next;
+    }
+
+    private void pushChild(final Map<Key, Component> tree, final Key childKey, final Deque<Component> stack, final Deque<Boolean> expanded) {
+        Component child = (childKey != null) ? tree.get(childKey) : null;
+        if (child != null) {
+            stack.push(child);
+            expanded.push(false);
+        }
+    }
+
+    /**
+     * @brief Fill the arrays of the connections and the heights
+     *
+     * @description Thanks to the post-order, heights are computed with a
+     *              single increasing loop.
+     */
+    private void computeConnections() {
+        for (int i = 0; i < nodes.length; i++) {
+            left[i] = indexOf(nodes[i].getConnections().getLCHILD());
+            right[i] = indexOf(nodes[i].getConnections().getRCHILD());
+            parent[i] = -1;
+        }
+
+        for (int i = 0; i < nodes.length; i++) {
+            int childHeight = 0;
+            if (left[i] >= 0) {
+                parent[left[i]] = i;
+                childHeight = height[left[i]];
+            }
+            if (right[i] >= 0) {
+                parent[right[i]] = i;
+                childHeight = Math.max(childHeight, height[right[i]]);
+            }
+            height[i] = childHeight + 1;
+        }
+    }
+
+}
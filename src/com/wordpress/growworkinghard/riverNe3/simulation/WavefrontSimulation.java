@@ -0,0 +1,219 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief Run the simulations layer by layer
+ *
+ * @description This is a <em>bulk-synchronous</em> mode: the nodes are
+ *              bucketed once by Component#getLayer() in plain arrays, then the
+ *              layers are processed from the deepest one up to the root. The
+ *              array of the current layer is split in a fixed slice for each
+ *              worker, the slices are submitted to the executor and the
+ *              calling thread joins them before submitting the next layer,
+ *              which is the only synchronization between two layers. No
+ *              readiness check is done on the nodes: the children of a node
+ *              are always in a deeper layer, so they have been simulated
+ *              before the join.
+ *              <p>
+ *              The slices of a layer do not wait for each other, thus they do
+ *              not need to be running at the same time: the executor can have
+ *              less threads than the workers, or be shared with other tasks.
+ *              The work of each layer and each worker is known in advance,
+ *              thus the mode is very predictable and it is useful as a
+ *              baseline for the dynamic schedulers. The duration of each
+ *              layer is measured by the join.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class WavefrontSimulation extends Simulation {
+
+    private final Component[][] layers; //!< nodes of each layer, the deepest layer last
+    private final Component[][] parents; //!< parent of each node of each layer
+    private final long[] layerDuration; //!< duration of each layer, in nanoseconds
+    private final AtomicReference<RuntimeException> failure; //!< first exception thrown by a simulation
+    private final ExecutorService executor; //!< executor to process tasks asynchronously
+    private final int concurrencyLevel; //!< the running threads
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] tree The tree structure
+     * @param[in] executor The main executor service
+     * @param[in] threadsNumber The number of slices of each layer, it can
+     *            be greater than the threads of the executor
+     * @exception IllegalArgumentException
+     *                if a layer is lower than 1 or a child is not in a deeper
+     *                layer than its parent
+     */
+    public WavefrontSimulation(final HashMap<Key, Component> tree, final ExecutorService executor, final int threadsNumber) {
+        validateTree(tree); // precondition
+        if (threadsNumber <= 0) throw new IllegalArgumentException("The number of threads must be positive.");
+
+        this.executor = executor;
+        this.concurrencyLevel = threadsNumber;
+        this.failure = new AtomicReference<RuntimeException>();
+
+        int deepestLayer = 0;
+        for (Component comp : tree.values())
+            deepestLayer = Math.max(deepestLayer, comp.getLayer());
+
+        List<List<Component>> buckets = new ArrayList<List<Component>>(deepestLayer);
+        for (int i = 0; i < deepestLayer; i++) buckets.add(new ArrayList<Component>());
+
+        for (Component comp : tree.values()) {
+            validateLayers(tree, comp); // precondition
+            buckets.get(comp.getLayer() - 1).add(comp);
+        }
+
+        this.layers = new Component[deepestLayer][];
+        this.parents = new Component[deepestLayer][];
+        this.layerDuration = new long[deepestLayer];
+        for (int i = 0; i < deepestLayer; i++) {
+            layers[i] = buckets.get(i).toArray(new Component[0]);
+            parents[i] = new Component[layers[i].length];
+            for (int j = 0; j < layers[i].length; j++)
+                parents[i][j] = parentOf(tree, layers[i][j]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see Simulation#run()
+     */
+    public void run() throws InterruptedException {
+        for (int layer = layers.length - 1; layer >= 0 && failure.get() == null; layer--) {
+            final CountDownLatch latch = new CountDownLatch(concurrencyLevel);
+            final long start = System.nanoTime();
+
+            for (int worker = 0; worker < concurrencyLevel; worker++)
+                executor.submit(new LayerSimulations(layer, worker, latch));
+
+            latch.await(); // every slice of the layer is finished
+            layerDuration[layer] = System.nanoTime() - start;
+        }
+
+        if (failure.get() != null) throw failure.get();
+    }
+
+    /**
+     * @brief Number of layers
+     *
+     * @return The number of the deepest layer
+     */
+    public int getLayersCount() {
+        return layers.length;
+    }
+
+    /**
+     * @brief Measured duration of a layer in the last run
+     *
+     * @param[in] layer The layer, starting from 1 for the root
+     * @return The duration in nanoseconds
+     */
+    public long getLayerDuration(final int layer) {
+        return layerDuration[layer - 1];
+    }
+
+    /**
+     * @brief Number of nodes of a layer
+     *
+     * @param[in] layer The layer, starting from 1 for the root
+     * @return The number of nodes
+     */
+    public int getLayerSize(final int layer) {
+        return layers[layer - 1].length;
+    }
+
+    /**
+     * @brief Validate the layers of a node and its children
+     *
+     * @description The layers start from 1 for the root, because the layer
+     *              of a node is used as position of its bucket.
+     *
+     * @param[in] tree The tree structure
+     * @param[in] comp The node
+     */
+    private static void validateLayers(final HashMap<Key, Component> tree, final Component comp) {
+        if (comp.getLayer() < 1) {
+            String message = "Layer of node " + comp.getConnections().getID().getString();
+            message += " is " + comp.getLayer() + ", while layers start from 1";
+            throw new IllegalArgumentException(message);
+        }
+
+        for (Key childKey : comp.getConnections().getChildren()) {
+            Component child = tree.get(childKey);
+            if (child != null && child.getLayer() <= comp.getLayer()) {
+                String message = "Child " + childKey.getString();
+                message += " is not in a deeper layer than its parent ";
+                message += comp.getConnections().getID().getString();
+                throw new IllegalArgumentException(message);
+            }
+        }
+    }
+
+    private class LayerSimulations implements Runnable {
+
+        private final int layer;
+        private final int worker;
+        private final CountDownLatch latch;
+
+        LayerSimulations(final int layer, final int worker, final CountDownLatch latch) {
+            this.layer = layer;
+            this.worker = worker;
+            this.latch = latch;
+        }
+
+        public void run() {
+            final Component[] nodes = layers[layer];
+            // static slice of the layer assigned to this worker
+            final int from = (int) ((long) nodes.length * worker / concurrencyLevel);
+            final int to = (int) ((long) nodes.length * (worker + 1) / concurrencyLevel);
+
+            try {
+                for (int i = from; i < to && failure.get() == null; i++)
+                    simulate(nodes[i], parents[layer][i]);
+            } catch (RuntimeException exception) {
+                failure.compareAndSet(null, exception);
+            } finally {
+                latch.countDown();
+            }
+        }
+
+    }
+
+}
@@ -19,8 +19,6 @@
 package com.wordpress.growworkinghard.riverNe3.tree.building;
 
 import java.util.HashMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
 
 import com.wordpress.growworkinghard.riverNe3.composite.Component;
 import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
@@ -84,35 +82,16 @@ public abstract class Tree {
      */
     abstract public HashMap<Key, Component> computeNodes();
 
+    /**
+     * @brief Method which builds the tree structure
+     *
+     * @description It is run by the thread calling Tree#computeNodes(), and
+     *              it must return only once the whole tree has been built.
+     *              An implementation may ask other threads to help it (e.g.
+     *              binaryTree.RiverBinaryTree asks its executor for a helper
+     *              at each branch), but it must not wait for tasks queued on
+     *              an executor shared with other trees.
+     */
     abstract protected void buildTree();
 
-    protected void parallelBuildTree(final ExecutorService executor, final int threadsNumber) {
-
-        CountDownLatch l = new CountDownLatch(threadsNumber);
-
-        for (int i = 0; i < threadsNumber; i++)
-            executor.submit(new MyRunnable(l));
-
-        try {
-            l.await();
-        } catch (InterruptedException e) {}
-
-    }
-
-    protected class MyRunnable implements Runnable {
-
-        CountDownLatch l;
-
-        MyRunnable(CountDownLatch l) {
-            this.l = l;
-        }
-
-        @Override
-        public void run() {
-            buildTree();
-            l.countDown();
-        }
-
-    }
-
 }
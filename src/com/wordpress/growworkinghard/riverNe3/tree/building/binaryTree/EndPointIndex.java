@@ -0,0 +1,246 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.tree.building.binaryTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.geometry.Geometry;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * @brief Hash index of the ending points of the lines of the net
+ *
+ * @description The coordinates of the ending point of each line are quantized
+ *              on a uniform grid of square cells and the key of the line in
+ *              the input data is stored in the bucket of its cell. The
+ *              children of a root are then the lines whose ending point lays
+ *              in the cell of the starting point of the root: one hash probe
+ *              instead of a scan of the whole input data, so that building the
+ *              tree is <em>O(N)</em>.
+ *              <p>
+ *              The side of the cells is derived from the data by
+ *              EndPointIndex#cellSizeOf(final Map), so that on average a cell
+ *              holds about one ending point whatever the units of the
+ *              coordinates are: a fixed side would put a whole catchment in a
+ *              few cells when the coordinates are in degrees, and each probe
+ *              would scan a bucket of almost all the lines.
+ *              </p>
+ *              <p>
+ *              The cell only narrows the candidates: the coordinates are still
+ *              compared exactly by the caller, so lines in the same cell but
+ *              not connected are discarded. The keys of each bucket are in
+ *              ascending order, which is the order of the iteration over the
+ *              input data the children were looked for before.
+ *              </p>
+ *              <p>
+ *              When the ending points are snapped to the starting points
+ *              within a tolerance, the candidates are looked for in all the
+ *              cells overlapping the square of side twice the tolerance
+ *              centered in the point. With cells not smaller than the
+ *              tolerance these are at most four neighbouring cells, so the
+ *              lookup is still a constant number of hash probes.
+ *              </p>
+ *              <p>
+ *              The index is built once from the input data and never modified,
+ *              so it can be read by many threads without locks. Only ending
+ *              points are indexed: they are never changed while the tree is
+ *              built, but when they are snapped within the tolerance, which
+ *              keeps them in the cells probed for their parent.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@Immutable
+class EndPointIndex {
+
+    static final double DEFAULT_CELL_SIZE = 1.0; //!< side of the cells when the extent of the data is a point
+
+    private final double cellSize; //!< side of the cells of the grid
+    private final Map<Long, List<Integer>> buckets; //!< keys of the lines whose ending point is in each cell
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] inputData The lines of the net, with their keys
+     * @param[in] cellSize The side of the cells of the grid
+     */
+    EndPointIndex(final Map<Integer, Geometry> inputData, final double cellSize) {
+        validateCellSize(cellSize); // precondition
+
+        this.cellSize = cellSize;
+
+        Integer[] keys = inputData.keySet().toArray(new Integer[inputData.size()]);
+        Arrays.sort(keys);
+
+        HashMap<Long, List<Integer>> tmpBuckets = new HashMap<Long, List<Integer>>(keys.length * 4 / 3 + 1);
+        for (Integer key : keys) {
+            Long cell = cellOf(inputData.get(key).getEndPoint());
+            List<Integer> bucket = tmpBuckets.get(cell);
+            if (bucket == null) {
+                bucket = new ArrayList<Integer>(2);
+                tmpBuckets.put(cell, bucket);
+            }
+            bucket.add(key);
+        }
+
+        this.buckets = tmpBuckets;
+    }
+
+    /**
+     * @brief The side of the cells for a set of lines
+     *
+     * @description The extent of the ending points is divided in about as
+     *              many cells as the lines: the side is
+     *              \f$\sqrt{A / N}\f$, where \f$A\f$ is the area of the
+     *              bounding box. If the ending points are aligned the side is
+     *              the length of the box divided by \f$N\f$, and if they all
+     *              coincide it is EndPointIndex#DEFAULT_CELL_SIZE.
+     *
+     * @param[in] inputData The lines of the net, with their keys
+     * @return The side of the cells of the grid
+     */
+    static double cellSizeOf(final Map<Integer, Geometry> inputData) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        for (Geometry line : inputData.values()) {
+            Coordinate2D point = line.getEndPoint();
+            minX = Math.min(minX, point.x);
+            minY = Math.min(minY, point.y);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+        }
+
+        final int lines = inputData.size();
+        final double width = maxX - minX;
+        final double height = maxY - minY;
+
+        double cellSize = (width > 0.0 && height > 0.0) ?
+            Math.sqrt(width * height / lines) :
+            Math.max(width, height) / lines;
+
+        return (cellSize > 0.0 && !Double.isInfinite(cellSize)) ? cellSize : DEFAULT_CELL_SIZE;
+    }
+
+    /**
+     * @brief The lines possibly ending in a point
+     *
+     * @param[in] point The point
+     * @return The keys of the lines whose ending point is in the same cell of
+     *         <code>point</code>, in ascending order
+     */
+    List<Integer> candidates(final Coordinate2D point) {
+        List<Integer> bucket = buckets.get(cellOf(point));
+        return (bucket == null) ? Collections.<Integer>emptyList() : Collections.unmodifiableList(bucket);
+    }
+
+    /**
+     * @return The side of the cells of the grid
+     */
+    double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @brief The lines possibly ending near a point
+     *
+     * @param[in] point The point
+     * @param[in] tolerance The maximum distance of the ending points from
+     *            <code>point</code>, not greater than the cell size
+     * @return The keys of the lines whose ending point is in a cell within
+     *         <code>tolerance</code> from <code>point</code>, in ascending
+     *         order
+     */
+    List<Integer> candidates(final Coordinate2D point, final double tolerance) {
+        if (tolerance == 0.0) return candidates(point);
+
+        long iMin = cellIndex(point.x - tolerance);
+        long iMax = cellIndex(point.x + tolerance);
+        long jMin = cellIndex(point.y - tolerance);
+        long jMax = cellIndex(point.y + tolerance);
+
+        // different cells may collide on the same bucket, which must be
+        // merged only once
+        HashSet<Long> cells = new HashSet<Long>(8);
+        for (long i = iMin; i <= iMax; i++)
+            for (long j = jMin; j <= jMax; j++)
+                cells.add(cellOf(i, j));
+
+        List<Integer> result = new ArrayList<Integer>();
+        for (Long cell : cells) {
+            List<Integer> bucket = buckets.get(cell);
+            if (bucket != null) result.addAll(bucket);
+        }
+
+        if (cells.size() > 1) Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * @brief The number of non-empty cells
+     *
+     * @return The number of cells including at least an ending point
+     */
+    int getCellsCount() {
+        return buckets.size();
+    }
+
+    /**
+     * @brief The cell of a point
+     *
+     * @description The two integer coordinates of the cell are mixed in a
+     *              single <code>long</code>. Different cells may collide on the
+     *              same bucket: that only adds candidates, which are discarded
+     *              by the exact comparison of the coordinates.
+     *
+     * @param[in] point The point
+     * @return The hash of the cell of the grid including the point
+     */
+    private Long cellOf(final Coordinate2D point) {
+        return cellOf(cellIndex(point.x), cellIndex(point.y));
+    }
+
+    private Long cellOf(final long i, final long j) {
+        return i * 0x9E3779B97F4A7C15L + j;
+    }
+
+    private long cellIndex(final double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private void validateCellSize(final double cellSize) {
+        if (!(cellSize > 0.0) || Double.isInfinite(cellSize))
+            throw new IllegalArgumentException("The cell size must be positive and finite: " + cellSize);
+    }
+
+}
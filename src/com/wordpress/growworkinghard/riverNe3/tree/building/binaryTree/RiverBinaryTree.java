@@ -18,17 +18,33 @@
  */
 package com.wordpress.growworkinghard.riverNe3.tree.building.binaryTree;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleBinaryOperator;
+import java.util.logging.Logger;
+
+import org.geotools.graph.util.geom.Coordinate2D;
 
 import com.wordpress.growworkinghard.riverNe3.composite.Component;
 import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
 import com.wordpress.growworkinghard.riverNe3.geometry.Geometry;
+import com.wordpress.growworkinghard.riverNe3.geometry.Line;
 import com.wordpress.growworkinghard.riverNe3.tree.building.Tree;
 
-import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
 /**
@@ -55,6 +71,58 @@ import net.jcip.annotations.ThreadSafe;
  *              <code>data</code> structure is empty.
  *              </p>
  *              <p>
+ *              Neither roots nor children are searched scanning
+ *              <code>data</code>. The keys of the new roots are queued in
+ *              <code>roots</code> as soon as they are identified, and the
+ *              ending points of all the lines are indexed once in an
+ *              EndPointIndex, so that the children of a root are found with a
+ *              hash probe on its starting point. Building the tree is therefore
+ *              <em>O(N)</em> and the threads share no lock.
+ *              </p>
+ *              <p>
+ *              The calling thread builds the tree itself, and a helper task is
+ *              asked to the executor only when a root has more than one child,
+ *              up to <code>threadsNumber - 1</code> helpers. A helper which
+ *              finds the queue empty ends, instead of spinning until the tree
+ *              is complete, and it is asked again when new roots are queued.
+ *              The calling thread waits only while the queue is empty and a
+ *              root is being processed by a running thread, which will either
+ *              queue its children or complete the tree: it never waits for the
+ *              helper tasks queued on the executor.
+ *              </p>
+ *              <p>
+ *              All the state is owned by the instance, so many basins can be
+ *              built at the same time, each by its own RiverBinaryTree, on a
+ *              shared <tt>ExecutorService</tt>. The only state shared with
+ *              the caller are the <tt>Geometry</tt> objects of the input data,
+ *              which are updated with their keys and layers: each instance
+ *              needs its own input data.
+ *              </p>
+ *              <p>
+ *              Built on a <tt>ForkJoinPool</tt>, there is neither a shared
+ *              queue of roots nor a shared counter: once the children of a
+ *              root have been resolved, the right one is forked as the root of
+ *              an independent sub-tree and the task goes on with the left one;
+ *              the key of each child is computed from the key of its parent.
+ *              The threads only share <code>data</code> and
+ *              <code>binaryTree</code>, and work stealing balances the
+ *              branches of the network.
+ *              </p>
+ *              <p>
+ *              The coordinates of the lines exported by different GIS may
+ *              differ in the last digits, so that a child does not end exactly
+ *              where its parent starts. After
+ *              <code>enableSnapping(tolerance)</code>, a line is a child of
+ *              a root when its ending point is within <code>tolerance</code>
+ *              from the starting point of the root, and its ending point is
+ *              moved onto it. The ending points are then indexed on cells not
+ *              smaller than the tolerance, so that only the neighbouring cells
+ *              are probed. The snapped points and their displacements are
+ *              counted, and reported by <code>getSnappedEndPoints()</code>,
+ *              <code>getMaxSnapDistance()</code> and
+ *              <code>getTotalSnapDistance()</code>.
+ *              </p>
+ *              <p>
  *              This class is <em>ThreadSafe</em> because:
  *              <ol>
  *              <li>the data structures <code>binaryTree</code> and
@@ -69,26 +137,16 @@ import net.jcip.annotations.ThreadSafe;
  *              threads can access the map concurrently, readers can access the
  *              map concurrently with writers, and a limited number of writers
  *              can modify the map concurrently.</blockquote></li>
- *              <li>in order to make each and every change immediately available
- *              to the working threads, the data structures have been declared
- *              <code>volatile</code>. That ensures that updates to a variable
- *              are propagated predictably to other threads.
- *              <ul>
- *              <li><code>volatile</code> fields and operations on them are not
- *              reordered with other memory operations by the compilar and
- *              runtime;</li>
- *              <li><code>volatile</code> variables are not cached in registers
- *              or in caches where they are hidden from other processors, so a
- *              read of a volatile variable always returns the most recent write
- *              by any thread @cite goetz2006:java;</li>
- *              </ul>
- *              </li>
- *              <li>the constructor follows the principles of double-locking of
- *              the <strong>Singleton Pattern</strong>;</li>
- *              <li>atomic operations and iterators in method
- *              RiverBinaryTree#findRoot() and
- *              RiverBinaryTree#findChildren(Geometry, int) are synchronized by
- *              the <em>intrinsic lock</em>;</li>
+ *              <li>the data structures are <code>final</code> and allocated in
+ *              the constructor, so they are safely published to the threads
+ *              building the tree;</li>
+ *              <li>each root is polled from the <tt>ConcurrentLinkedQueue</tt>
+ *              <code>roots</code> by exactly one thread, and it is queued (or
+ *              forked) only after its parent has finished to update it, so a
+ *              <tt>Geometry</tt> is never modified by two threads at the same
+ *              time;</li>
+ *              <li>the EndPointIndex is never modified after its
+ *              construction;</li>
  *              <li>in order to avoid the <code>binaryTree</code> escaping from
  *              this class, the RiverBinaryTree#computeNodes() method returns a
  *              copy of it;</li>
@@ -105,29 +163,142 @@ import net.jcip.annotations.ThreadSafe;
 @ThreadSafe
 public class RiverBinaryTree extends Tree {
 
-    @GuardedBy("this") private volatile static ConcurrentHashMap<Key, Component> binaryTree; //!< structure of the binary tree
-    @GuardedBy("this") private volatile static ConcurrentHashMap<Integer, Geometry> data; //!< input data
-    @GuardedBy("this") private static SimpleNodeFactory factory = new SimpleNodeFactory(); //!< simple factory in order to instantiate the proper type of node for each <tt>Geometry</tt> data
-    @GuardedBy("this") private ExecutorService executor;
-    @GuardedBy("this") private int threadsNumber;
+    private final ConcurrentHashMap<Key, Component> binaryTree; //!< structure of the binary tree
+    private final ConcurrentHashMap<Integer, Geometry> data; //!< input data
+    private final ConcurrentLinkedQueue<Integer> roots; //!< keys in data of the roots not processed yet
+    private final AtomicInteger pendingRoots; //!< roots queued or being processed
+    private final AtomicInteger helpers; //!< helper tasks running or queued on the executor
+    private final Object progress = new Object(); //!< monitor where the calling thread waits for new roots
+    private volatile boolean awaiting; //!< whether the calling thread is waiting on <code>progress</code>
+    private volatile EndPointIndex endPoints; //!< index of the ending points of the input data
+    private volatile double tolerance; //!< maximum distance of a child from its parent, 0 if exact
+    private final LongAdder snappedEndPoints; //!< ending points moved onto the starting point of their parent
+    private final DoubleAdder totalSnapDistance; //!< sum of the displacements of the snapped ending points
+    private final DoubleAccumulator maxSnapDistance; //!< maximum displacement of a snapped ending point
+    private final AtomicReference<RuntimeException> failure; //!< first exception thrown while building
+    private final int lines; //!< lines of the input data
+    private final LongAdder ghostNodes; //!< ghost nodes added while building
+    private final Set<Integer> ghostKeys; //!< keys in data of the ghost nodes not processed yet
+    private final SimpleNodeFactory factory = new SimpleNodeFactory(); //!< simple factory in order to instantiate the proper type of node for each <tt>Geometry</tt> data
+    private final ExecutorService executor; //!< executor running the helper threads, <code>null</code> on a <tt>ForkJoinPool</tt>
+    private final int threadsNumber;
+    private final ForkJoinPool pool; //!< pool where the sub-trees are forked, <code>null</code> on an <tt>ExecutorService</tt>
+
+    private static final Logger LOGGER = Logger.getLogger(RiverBinaryTree.class.getName());
 
     /**
      * @brief Constructor
      *
-     * @description This constructor calls the <code>static</code> method
-     *              RiverBinaryTree#getInstance(final HashMap<Integer, Geometry>, final int)
-     *              in order to apply the
-     *              <strong>Singleton Pattern</strong> with double-locking
+     * @description In order to allocate only the useful memory for the
+     *              <tt>ConcurrentHashMap</tt> structures,
+     *              <code>loadFactor</code> and <code>concurrencyLevel</code>
+     *              have to be specified. Indeed, the default constructor of the
+     *              <tt>ConcurrentHashMap</tt> allocates many objects in order
+     *              to ensure the concurrent access of its data structure by
+     *              different threads (the default <code>concurrencyLevel</code>
+     *              is 16). A <code>loadFactory</code> equals to 0.9f ensures a
+     *              dense packaging which will optimize the memory use.
      *
      * @param[in] inputData The input data after parsing a conversion in
      *            <tt>Geometry</tt> objects
      * @param[in] threadsNumber The number of threads that will possibly work
-     *            concurrently on the same <tt>ConcurrentHashMap</tt>
+     *            concurrently on the same <tt>ConcurrentHashMap</tt>, the
+     *            calling thread included
+     * @param[in] executor The executor running the threads other than the
+     *            calling one, possibly shared with other trees
      */
     public RiverBinaryTree(final HashMap<Integer, Geometry> inputData, final int threadsNumber, final ExecutorService executor) {
+        this(inputData, threadsNumber, executor, null);
+    }
+
+    /**
+     * @brief Constructor of a tree built with a <strong>fork/join</strong>
+     *
+     * @param[in] inputData The input data after parsing a conversion in
+     *            <tt>Geometry</tt> objects
+     * @param[in] pool The pool where the sub-trees are forked, possibly
+     *            shared with other trees
+     */
+    public RiverBinaryTree(final HashMap<Integer, Geometry> inputData, final ForkJoinPool pool) {
+        this(inputData, validatePool(pool).getParallelism(), null, pool);
+    }
+
+    private RiverBinaryTree(final HashMap<Integer, Geometry> inputData, final int threadsNumber, final ExecutorService executor, final ForkJoinPool pool) {
+        validateInputData(inputData); // precondition
+
         this.executor = executor;
         this.threadsNumber = threadsNumber;
-        getInstance(inputData, threadsNumber);
+        this.pool = pool;
+
+        int size = inputData.size(); // an initial size
+        float loadFactor = 0.9f; // dense packaging which will optimize memory use
+        int concurrencyLevel = Math.max(threadsNumber, 1); // the running threads
+
+        this.binaryTree = new ConcurrentHashMap<Key, Component>(size, loadFactor, concurrencyLevel);
+        this.data = new ConcurrentHashMap<Integer, Geometry>(size, loadFactor, concurrencyLevel);
+        this.data.putAll(inputData);
+        this.endPoints = new EndPointIndex(inputData, EndPointIndex.cellSizeOf(inputData));
+        this.roots = new ConcurrentLinkedQueue<Integer>();
+        this.failure = new AtomicReference<RuntimeException>();
+        this.lines = inputData.size();
+        this.ghostNodes = new LongAdder();
+        this.ghostKeys = ConcurrentHashMap.<Integer>newKeySet();
+        this.snappedEndPoints = new LongAdder();
+        this.totalSnapDistance = new DoubleAdder();
+        this.maxSnapDistance = new DoubleAccumulator(new DoubleBinaryOperator() {
+                @Override
+                public double applyAsDouble(final double left, final double right) {
+                    return Math.max(left, right);
+                }
+            }, 0.0);
+
+        for (Map.Entry<Integer, Geometry> entry : inputData.entrySet())
+            if (entry.getValue().isRoot()) roots.add(entry.getKey());
+        this.pendingRoots = new AtomicInteger(roots.size());
+        this.helpers = new AtomicInteger();
+    }
+
+    /**
+     * @brief Enable the snapping of the ending points
+     *
+     * @description Must be called before <code>computeNodes()</code>. The
+     *              tolerance must be smaller than half the distance between
+     *              two different junctions of the network, otherwise a line
+     *              may be linked to the wrong one.
+     *
+     * @param[in] tolerance The maximum distance between the ending point of a
+     *            child and the starting point of its parent, in the units of
+     *            the coordinates
+     */
+    public void enableSnapping(final double tolerance) {
+        if (!(tolerance >= 0.0) || Double.isInfinite(tolerance))
+            throw new IllegalArgumentException("The tolerance must be non negative and finite: " + tolerance);
+
+        double cellSize = Math.max(endPoints.getCellSize(), tolerance);
+        this.endPoints = new EndPointIndex(data, cellSize);
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return The number of ending points moved onto the starting point of
+     *         their parent
+     */
+    public long getSnappedEndPoints() {
+        return snappedEndPoints.sum();
+    }
+
+    /**
+     * @return The maximum displacement of a snapped ending point
+     */
+    public double getMaxSnapDistance() {
+        return maxSnapDistance.get();
+    }
+
+    /**
+     * @return The sum of the displacements of the snapped ending points
+     */
+    public double getTotalSnapDistance() {
+        return totalSnapDistance.sum();
     }
 
     /**
@@ -137,81 +308,153 @@ public class RiverBinaryTree extends Tree {
      */
     @Override
     public HashMap<Key, Component> computeNodes() {
-        parallelBuildTree(executor, threadsNumber);
+        if (pool != null) forkJoinBuildTree();
+        else {
+            for (int i = 1; i < pendingRoots.get(); i++)
+                requestHelper();
+            buildTree();
+        }
+
+        RuntimeException exception = failure.get();
+        if (exception != null) throw exception;
+
+        if (snappedEndPoints.sum() > 0)
+            LOGGER.info("snapped " + getSnappedEndPoints() + " ending points (max distance = "
+                        + getMaxSnapDistance() + ", total distance = " + getTotalSnapDistance() + ")");
+
         validateOutputData(); //!< postcondition
         return deepCopy(binaryTree);
     }
 
+    /**
+     * @brief Process roots until the whole tree is built
+     *
+     * @description Run by the calling thread. The loop ends when no root is
+     *              queued or being processed by any thread, so when it returns
+     *              the tree is complete. Lines never connected to the main
+     *              root are left in <code>data</code> and reported by the
+     *              postcondition, instead of being waited for. An exception
+     *              thrown by any thread stops all of them and it is thrown
+     *              again by RiverBinaryTree#computeNodes().
+     */
     protected void buildTree() {
-        while(!data.isEmpty()) {
-            findRoot();
+        try {
+            while (pendingRoots.get() > 0 && failure.get() == null) {
+                final Integer next = roots.poll();
+                if (next != null) findRoot(next);
+                else awaitProgress();
+            }
+        } catch (RuntimeException exception) {
+            fail(exception);
         }
     }
 
     /**
-     * @brief The copy of the structure of the binary tree
+     * @brief Wait until a root is queued or the tree is complete
      *
-     * @param[in] computedTree The binary tree just computed 
-     * @return The copy of the binary tree
+     * @description The flag <code>awaiting</code> is set before checking the
+     *              queue and the counter, while the other threads update them
+     *              before reading the flag, so either the calling thread sees
+     *              the update or the updating thread sees the flag and
+     *              notifies it.
      */
-    private static HashMap<Key, Component> deepCopy(final ConcurrentHashMap<Key, Component> computedTree) {
-        HashMap<Key, Component> result = new HashMap<Key, Component>();
-        result.putAll(computedTree);
-        return result;
+    private void awaitProgress() {
+        synchronized (progress) {
+            awaiting = true;
+            try {
+                while (roots.isEmpty() && pendingRoots.get() > 0 && failure.get() == null)
+                    progress.wait();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while building the tree.", exception);
+            } finally {
+                awaiting = false;
+            }
+        }
     }
 
     /**
-     * @brief Allocate the state variables of the class
+     * @brief Wake the calling thread if it is waiting for new roots
+     */
+    private void signalProgress() {
+        if (awaiting) {
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @brief Record the first exception and stop the building
      *
-     * @description In order to allocate only the useful memory for the
-     *              <tt>ConcurrentHashMap</tt> structures,
-     *              <code>loadFactor</code> and <code>concurrencyLevel</code>
-     *              have to be specified. Indeed, the default constructor of the
-     *              <tt>ConcurrentHashMap</tt> allocates many objects in order
-     *              to ensure the concurrent access of its data structure by
-     *              different threads (the default <code>concurrencyLevel</code>
-     *              is 16). A <code>loadFactory</code> equals to 0.9f ensures a
-     *              dense packaging which will optimize the memory use.
+     * @param[in] exception The exception thrown by a building thread
+     */
+    private void fail(final RuntimeException exception) {
+        failure.compareAndSet(null, exception);
+        signalProgress();
+    }
+
+    /**
+     * @brief Ask the executor for a helper, if there are less than
+     *        <code>threadsNumber - 1</code>
      *
-     * @param[in] inputData The input data
-     * @param[in] threadsNumber The number of threads
+     * @description A helper rejected by the executor is discounted: the
+     *              roots are then processed by the threads already building
+     *              the tree.
      */
-    private static void getInstance(final HashMap<Integer, Geometry> inputData, final int threadsNumber) {
-
-        if (statesAreNull()) {
-            synchronized (RiverBinaryTree.class) {
-                if (statesAreNull()) {
-                    validateInputData(inputData); // precondition
-
-                    int size = inputData.size(); // an initial size
-                    float loadFactor = 0.9f; // dense packaging which will optimize memory use
-                    int concurrencyLevel = threadsNumber; // the running threads
-
-                    RiverBinaryTree.binaryTree
-                        = new ConcurrentHashMap<Key, Component>(size,
-                                                                loadFactor,
-                                                                concurrencyLevel);
-                    RiverBinaryTree.data
-                        = new ConcurrentHashMap<Integer, Geometry>(size,
-                                                                   loadFactor,
-                                                                   concurrencyLevel);
-                    RiverBinaryTree.data.putAll(inputData);
-                }
-            }
+    private void requestHelper() {
+        if (!reserveHelper()) return;
+
+        try {
+            executor.execute(new RootsHelper());
+        } catch (RejectedExecutionException exception) {
+            helpers.decrementAndGet();
+        }
+    }
+
+    /**
+     * @brief Count a new helper, if there are less than
+     *        <code>threadsNumber - 1</code>
+     *
+     * @retval TRUE The helper has been counted and it has to be run
+     * @retval FALSE There are enough helpers
+     */
+    private boolean reserveHelper() {
+        int running;
+        while ((running = helpers.get()) < threadsNumber - 1)
+            if (helpers.compareAndSet(running, running + 1)) return true;
+        return false;
+    }
+
+    /**
+     * @brief Build the tree forking a task for each sub-tree
+     *
+     * @description The initial roots are taken from the <code>roots</code>
+     *              queue, which is not used anymore. An exception thrown by
+     *              any task is thrown again by <tt>ForkJoinPool#invoke</tt>.
+     */
+    private void forkJoinBuildTree() {
+        List<SubtreeBuilding> subtrees = new ArrayList<SubtreeBuilding>();
+
+        Integer next;
+        while ((next = roots.poll()) != null) {
+            subtrees.add(new SubtreeBuilding(next));
+            pendingRoots.decrementAndGet();
         }
 
+        pool.invoke(new RootsBuilding(subtrees));
     }
 
     /**
-     * @brief Check if the states variables are null
+     * @brief The copy of the structure of the binary tree
      *
-     * @retval TRUE if both states are null
-     * @retval FALSE otherwise
+     * @param[in] computedTree The binary tree just computed 
+     * @return The copy of the binary tree
      */
-    private static boolean statesAreNull() {
-        return
-            (RiverBinaryTree.binaryTree == null &&
-             RiverBinaryTree.data == null) ? true : false;
+    private static HashMap<Key, Component> deepCopy(final ConcurrentHashMap<Key, Component> computedTree) {
+        HashMap<Key, Component> result = new HashMap<Key, Component>();
+        result.putAll(computedTree);
+        return result;
     }
 
     /**
@@ -238,60 +481,68 @@ public class RiverBinaryTree extends Tree {
      *              The root node of the <tt>sub-tree</tt> is removed from the
      *              <code>data</code> structure at the end of each parsing loop.
      *              <p>
-     *              As written in the <em>Java 8 Documentation</em> for the
-     *              <tt>ConcurrentHashMap</tt> class, iterators are designed to
-     *              be used by only <strong>one thread</strong> at a time. So
-     *              for ensuring a good concurrency, a good policy may be
-     *              synchronize the iteration until a root node of a sub-tree
-     *              has been found and deleted from the
-     *              <tt>ConcurrentHashMap</tt>. Then release the lock (so
-     *              another thread can look for a different root of a sub-tree)
-     *              and process the root just found.
+     *              The roots are not searched in <code>data</code>: their keys
+     *              are polled from the <code>roots</code> queue, where they
+     *              have been added by the thread which identified them. The
+     *              calling thread polls the next one itself, so a helper is
+     *              asked to the executor only for the second child.
      *              </p>
+     *
+     * @param[in] next The key of the root polled from <code>roots</code>
      */
-    private void findRoot() {
-
-        // stack confinement: this object escapes because it is going to be
-        // passed to aliens constructors. However that is not a problem, because
-        // this object is a reference to an object already removed from the
-        // ConcurrenHashMap
-        Geometry tmpGeom = null;
-        // stack confinement: this object must not escape. This is ensured by
-        // copying it in the emptyKey variable before passing it to findChildren
-        // method
-        Integer next = null;
-        // stack confinement: primitive variables cannot escape
-        boolean rootRemoved = false;
+    private void findRoot(final int next) {
 
-        synchronized(this) {
-            Iterator<Integer> iterator = data.keySet().iterator();
-            while (iterator.hasNext()){
+        try {
 
-                next = iterator.next();
-                tmpGeom = data.get(next);
+            List<Integer> newRoots = new ArrayList<Integer>(2);
+            processRoot(next, newRoots);
 
-                // if the tmpGeom is root a new sub-tree has just been identified
-                if (tmpGeom != null && tmpGeom.isRoot()) {
-                    rootRemoved = data.remove(next, tmpGeom);
-                    break;
-                }
+            // the new roots are counted before this root is discounted
+            for (Integer newRoot : newRoots)
+                queueRoot(newRoot);
 
-            }
+            if (newRoots.size() > 1) requestHelper();
 
+        } finally {
+            pendingRoots.decrementAndGet();
+            signalProgress();
         }
 
-        // The if rootRemoved and !data.containsKey(next) are a further double
-        // check to ensure to process the right node. No synchronization is
-        // required for that check because both the variable are local variable
-        // stored in the stack memory of each thread.
-        if (rootRemoved && !data.containsKey(next)) {
+    }
+
+    /**
+     * @brief Add the node of a root to the binary tree
+     *
+     * @description The root is removed from <code>data</code> and its
+     *              children are identified. The keys of the new roots are
+     *              returned to the caller, which is in charge of processing
+     *              them, only after the new node has been built.
+     *
+     * @param[in] next The key of the root in <code>data</code> structure
+     * @param[out] newRoots The keys in <code>data</code> of the new roots
+     * @exception IllegalStateException
+     *                if the key of the new node is already in the tree
+     */
+    private void processRoot(final int next, final List<Integer> newRoots) {
+
+        // stack confinement: this object escapes because it is going to be
+        // passed to aliens constructors. However that is not a problem, because
+        // this object is a reference to an object already removed from the
+        // ConcurrenHashMap
+        final Geometry tmpGeom = data.remove(next);
+
+        if (tmpGeom != null) {
+
+            // the flag is removed before the key is used by a new ghost node
+            boolean ghost = ghostKeys.remove(next);
 
             // node removed, so its key in data structure is now not connected
             // with another node. This key can be used to add a ghost node to
             // the data structure if identified
             int emptyKey = next;
-            Component newNode = findChildren(tmpGeom, emptyKey);
-            binaryTree.putIfAbsent(newNode.getConnections().getID(), newNode);
+            Component newNode = findChildren(tmpGeom, ghost, emptyKey, newRoots);
+            if (binaryTree.putIfAbsent(newNode.getConnections().getID(), newNode) != null)
+                throw new IllegalStateException(collisionMessage(newNode));
 
         }
 
@@ -306,17 +557,14 @@ public class RiverBinaryTree extends Tree {
      *              identified they become the new roots for the following
      *              loops.
      *              <p>
-     *              As written in the <em>Java 8 Documentation</em> for the
-     *              <tt>ConcurrentHashMap</tt> class, iterators are designed to
-     *              be used by only <strong>one thread</strong> at a time. So
-     *              for ensuring a good concurrency, a good policy may be
-     *              synchronize the iteration until two or three children (in
-     *              case of ghost node) have been found. Then it is possible to
-     *              release the lock (so another thread can look for the
-     *              children of the root node it is processing), processing
-     *              children and ghost node, update the <code>data</code>
-     *              structure and compute the new node of the net from the
-     *              factory method implemented.
+     *              The candidates are only the lines indexed in the cell of
+     *              the starting point of the root, in ascending order of key,
+     *              and among them the lines still in <code>data</code>, not
+     *              assigned to another node yet and exactly connected to the
+     *              root. The new roots are returned
+     *              only after the new node has been built, because the right
+     *              child of a ghost node is updated again when the ghost node
+     *              is processed.
      *              </p>
      *              <p>
      *              The factory method implemented is the <strong>Simple
@@ -324,12 +572,14 @@ public class RiverBinaryTree extends Tree {
      *              </p>
      *
      * @param[in] root The root of the temporary sub-tree
+     * @param[in] ghost <code>true</code> if the root is a ghost node
      * @param[in] emptyKey The key of the root, which can be used by a ghost
      *            node, if identified
+     * @param[out] newRoots The keys in <code>data</code> of the new roots
      * @return The new node of the binary tree, built on its connections
      *         (children, parent and eventually ghost node)
      */
-    private Component findChildren(final Geometry root, final int emptyKey) {
+    private Component findChildren(final Geometry root, final boolean ghost, final int emptyKey, final List<Integer> newRoots) {
 
         // stack confinement: primitive variables cannot escape
         boolean ghostNode = false;
@@ -344,40 +594,38 @@ public class RiverBinaryTree extends Tree {
         // This rule must be followed in the following methods as well
         Geometry rightChild = null;
 
-        synchronized(this) {
-            Iterator<Integer> iterator = data.keySet().iterator();
-            while (iterator.hasNext()) {
-
-                Integer next;
-                Geometry tmpChild = null;
-
-                next = iterator.next();
-                tmpChild = data.get(next);
-
-                if (tmpChild != null && tmpChildConnectedToRoot(tmpChild, root)) {
-
-                    if (leftChild == null) { // if no left child yet, assign it first
-                        leftChild = tmpChild;
-                        boolean isLeft = true;
-                        setNewRoot(leftChild, root, isLeft);
-                        leftIndex = next;
-                    } else if (rightChild == null) { // if no right child, then assign it
-                        rightChild = tmpChild;
-                        boolean isLeft = false;
-                        setNewRoot(rightChild, root, isLeft);
-                        rightIndex = next;
-                    } else {
-                        ghostNode = true; //if more than two children are identified ghost + exit
-                        break;
-                    }
-
+        for (Integer next : endPoints.candidates(root.getStartPoint(), tolerance)) {
+
+            Geometry tmpChild = data.get(next);
+
+            // a line already flagged as root has been assigned to another
+            // node: it is the left child of the parent of a ghost node, which
+            // may not have been removed from data yet
+            if (tmpChild != null && !tmpChild.isRoot() && tmpChildConnectedToRoot(tmpChild, root)) {
+
+                if (leftChild == null) { // if no left child yet, assign it first
+                    leftChild = tmpChild;
+                    boolean isLeft = true;
+                    setNewRoot(leftChild, root, isLeft);
+                    leftIndex = next;
+                } else if (rightChild == null) { // if no right child, then assign it
+                    rightChild = tmpChild;
+                    boolean isLeft = false;
+                    setNewRoot(rightChild, root, isLeft);
+                    rightIndex = next;
+                } else {
+                    ghostNode = true; //if more than two children are identified ghost + exit
+                    break;
                 }
 
             }
+
         }
 
         updateData(ghostNode, root, leftIndex, rightIndex, emptyKey, leftChild, rightChild);
-        return factory.createNewNode(root, leftChild, rightChild);
+        Component newNode = factory.createNewNode(root, leftChild, rightChild, ghost);
+        addNewRoots(ghostNode, leftIndex, rightIndex, emptyKey, newRoots);
+        return newNode;
 
     }
 
@@ -412,17 +660,10 @@ public class RiverBinaryTree extends Tree {
      *              ensures that each thread processes a different root and then
      *              different children.</li>
      *              </ol>
-     *              Doesn't matter if other threads don't see immediately the
-     *              updated value of a child (that can appen if they have
-     *              already got the iterator in RiverBinaryTree#findRoot() or in
-     *              RiverBinaryTree#findChildren(), otherwise both the
-     *              <tt>ConcurrentHashMap</tt> have been declared
-     *              <strong>volatile</strong>). They see stale values, but it is
-     *              not important because they are simply going to process other
-     *              roots node. <strong>Stale Data</strong> are not a problem
-     *              because the external loop in RiverBINAryTree#buildTree()
-     *              goes on until the last element of <code>data</code> has been
-     *              deleted.
+     *              No other thread can see a child while it is updated: the
+     *              children are queued in <code>roots</code> (or forked) only
+     *              after this update, and the queue (or the fork) publishes
+     *              them safely to the thread which is going to process them.
      *              </p>
      *              <p>
      *              For the same reason, it's almost impossible that a thread
@@ -448,14 +689,17 @@ public class RiverBinaryTree extends Tree {
 
         if (ghostNode) { // CASE 1: ghost node identified
 
-            // right child becomes ghost node (starting point = ending point)
-            ricomputeRightChild(rightChild);
+            // ghost node takes the place of the right child (starting point =
+            // ending point)
+            Geometry ghost = ricomputeRightChild(rightChild);
             // ghost node is added to the data structure (data structure is
             // going to have one more node with root flag set on true)
             // the official right child is not replaced by ghost node in data
             // and the boolean flag root is still set on false
-            data.put(emptyKey, rightChild);
+            ghostKeys.add(emptyKey); // flagged before the ghost is visible in data
+            data.put(emptyKey, ghost);
             data.replace(leftIndex, leftChild); // left child updated
+            ghostNodes.increment();
 
         } else if (leftChild != null &&
                    rightChild != null) { // CASE 2: both children are present
@@ -470,9 +714,53 @@ public class RiverBinaryTree extends Tree {
 
     }
 
+    /**
+     * @brief Collect the new roots identified processing a root
+     *
+     * @description In case of ghost node, the ghost node is added in place of
+     *              the right child: the right child is going to be found again
+     *              as a child of the ghost node.
+     *
+     * @param[in] ghostNode <code>true</code> if a ghost node has been
+     *            identified
+     * @param[in] leftIndex The index of the left child in <code>data</code>
+     *            structure, -1 if missing
+     * @param[in] rightIndex The index of the right child in <code>data</code>
+     *            structure, -1 if missing
+     * @param[in] emptyKey The index of the ghost node in <code>data</code>
+     *            structure
+     * @param[out] newRoots The keys in <code>data</code> of the new roots
+     */
+    private void addNewRoots(final boolean ghostNode, final int leftIndex, final int rightIndex, final int emptyKey, final List<Integer> newRoots) {
+
+        if (leftIndex != -1) newRoots.add(leftIndex);
+
+        if (ghostNode) newRoots.add(emptyKey);
+        else if (rightIndex != -1) newRoots.add(rightIndex);
+
+    }
+
+    /**
+     * @brief Queue a new root
+     *
+     * @description The root is counted before being queued, so that the
+     *              counter of the pending roots cannot reach zero while it is
+     *              waiting in the queue.
+     *
+     * @param[in] index The index of the root in <code>data</code> structure
+     */
+    private void queueRoot(final int index) {
+        pendingRoots.incrementAndGet();
+        roots.add(index);
+
+    }
+
     /**
      * @brief Verify if the temporary child is connected to the root
      *
+     * @description Without snapping the coordinates are compared exactly,
+     *              otherwise their distance must be within the tolerance.
+     *
      * @param[in] tmpChild The temporary <tt>Geometry</tt> object analyzed
      * @param[in] root The root of the sub-tree
      * @retval TRUE The child is connected to the root
@@ -488,7 +776,36 @@ public class RiverBinaryTree extends Tree {
         double x_root = root.getStartPoint().x;
         double y_root = root.getStartPoint().y;
 
-        return (x_tmpChild == x_root && y_tmpChild == y_root) ? true : false;
+        if (tolerance == 0.0)
+            return (x_tmpChild == x_root && y_tmpChild == y_root) ? true : false;
+
+        return (Math.hypot(x_tmpChild - x_root, y_tmpChild - y_root) <= tolerance) ? true : false;
+
+    }
+
+    /**
+     * @brief Move the ending point of a child onto the starting point of its
+     *        parent
+     *
+     * @description Ghost nodes are built on the ending point of the right
+     *              child, so after snapping they start exactly from the
+     *              parent as well.
+     *
+     * @param[out] child The child
+     * @param[in] parent The parent
+     */
+    private void snapToParent(final Geometry child, final Geometry parent) {
+
+        Coordinate2D endPoint = child.getEndPoint();
+        Coordinate2D startPoint = parent.getStartPoint();
+        double distance = Math.hypot(endPoint.x - startPoint.x, endPoint.y - startPoint.y);
+
+        if (distance > 0.0) {
+            child.setEndPoint(startPoint);
+            snappedEndPoints.increment();
+            totalSnapDistance.add(distance);
+            maxSnapDistance.accumulate(distance);
+        }
 
     }
 
@@ -499,7 +816,8 @@ public class RiverBinaryTree extends Tree {
      *              the mean time set the <code>parentKey</code>, the
      *              <code>layer</code> and the <code>leftChildKey</code> or the
      *              <code>rightChildKey</code> on the basis of the type of
-     *              child.
+     *              child. With snapping enabled, the ending point of the child
+     *              is moved onto the starting point of the parent as well.
      *
      * @param[out] child The child which is going to become the new root
      * @param[in] parent The actual root
@@ -508,6 +826,8 @@ public class RiverBinaryTree extends Tree {
      */
     private void setNewRoot(final Geometry child, final Geometry parent, final boolean leftChild) {
 
+        if (tolerance > 0.0) snapToParent(child, parent);
+
         child.setRoot(true);
         child.setParentKey(parent.getKey());
         child.setLayer(parent.getLayer()+1);
@@ -523,22 +843,28 @@ public class RiverBinaryTree extends Tree {
     }
 
     /**
-     * @brief Right child becomes a ghost node
+     * @brief Right child is replaced by a ghost node
      *
      * @description If at least a ghost node is required to build the binary
-     *              structure, the first right child identified becomes a ghost
-     *              node.
+     *              structure, a ghost node takes the key of the first right
+     *              child identified, which is going to be found again as a
+     *              child of the ghost node.
      *              <p>
-     *              To easily identify the ghost node in the following parsing
-     *              of the <code>data</code> structure, the coordinates of the
-     *              starting point are set equal to the coordinate of the ending
-     *              point.
+     *              The starting point of the ghost node is its ending point,
+     *              the junction of the children, so that they are found again
+     *              at its start. A real line may start where it ends too, thus
+     *              the ghost node is told apart by its key in
+     *              <code>data</code>, recorded in <code>ghostKeys</code>. The
+     *              right child is not modified, so its own children are still
+     *              connected to it.
      *              </p>
      *
      * @param[out] right The right child
+     * @return The ghost node
      */
-    private void ricomputeRightChild(final Geometry right) {
-        right.setStartPoint(right.getEndPoint());
+    private Geometry ricomputeRightChild(final Geometry right) {
+        right.setRoot(false);
+        return new Line(true, right.getKey(), right.getParentKey(), right.getLayer(), right.getEndPoint(), right.getEndPoint());
     }
 
     /**
@@ -546,15 +872,48 @@ public class RiverBinaryTree extends Tree {
      *
      * @param inputData The parsed data from the input files
      */
-    private static void validateInputData(final HashMap<Integer, Geometry> inputData) {
+    private void validateInputData(final HashMap<Integer, Geometry> inputData) {
         if (inputData == null) {
             String message = "The input HashMap cannot be null.";
             throw new NullPointerException(message);
         }
     }
 
+    /**
+     * @brief Validation of the <tt>ForkJoinPool</tt>
+     *
+     * @param[in] pool The pool where the sub-trees are forked
+     * @return The same pool
+     */
+    private static ForkJoinPool validatePool(final ForkJoinPool pool) {
+        if (pool == null) {
+            String message = "The ForkJoinPool cannot be null.";
+            throw new NullPointerException(message);
+        }
+        return pool;
+    }
+
+    /**
+     * @brief The message of two nodes with the same key
+     *
+     * @description The key of a node in layer <tt>L</tt> needs <tt>L</tt>
+     *              bits, while a <code>double</code> represents exactly only
+     *              53 bits: the keys of deeper nodes may collide.
+     *
+     * @param[in] newNode The node whose key is already in the tree
+     * @return The message
+     */
+    static String collisionMessage(final Component newNode) {
+        String message = "Key " + newNode.getConnections().getID().getString();
+        message += " of the node in layer " + newNode.getLayer() + " is already in the tree.";
+        message += " The tree is too deep for the precision of the keys";
+        return message;
+    }
+
     /**
      * @brief Validation of the output data
+     *
+     * @description Each line and each ghost node is a node of the tree.
      */
     private void validateOutputData() {
         if (binaryTree.isEmpty()) {
@@ -565,9 +924,96 @@ public class RiverBinaryTree extends Tree {
 
         if (!data.isEmpty()) { // the computation is finished only if data is empty
             String message = "Computation not finished yet.";
-            message += " Check threads work.";
+            message += " " + data.size() + " lines are not connected to the main root.";
             throw new UnsupportedOperationException(message);
         }
+
+        if (binaryTree.size() != lines + ghostNodes.sum()) {
+            String message = "The tree has " + binaryTree.size() + " nodes, while there are ";
+            message += lines + " lines and " + ghostNodes.sum() + " ghost nodes";
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * @brief Helper task processing the queued roots
+     *
+     * @description It ends as soon as the queue is empty. Before ending it
+     *              checks the queue again, because a root queued while it was
+     *              being discounted did not ask for a new helper.
+     */
+    private class RootsHelper implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                do {
+                    Integer next;
+                    while (failure.get() == null && (next = roots.poll()) != null)
+                        findRoot(next);
+                    helpers.decrementAndGet();
+                } while (!roots.isEmpty() && failure.get() == null && reserveHelper());
+            } catch (RuntimeException exception) {
+                helpers.decrementAndGet();
+                fail(exception);
+            }
+        }
+
+    }
+
+    private class RootsBuilding extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final List<SubtreeBuilding> roots;
+
+        RootsBuilding(final List<SubtreeBuilding> roots) { this.roots = roots; }
+
+        @Override
+        protected void compute() {
+            invokeAll(roots);
+        }
+
+    }
+
+    /**
+     * @brief Task building a sub-tree
+     *
+     * @description The task walks down the left children of its root in a
+     *              loop and forks a new task for each right child, so a long
+     *              chain of only children, as the main stem of a river, does
+     *              not nest a call for each reach. The forked tasks are joined
+     *              in reverse order, the most recent first, so that the ones
+     *              not stolen by other workers are run in place.
+     */
+    private class SubtreeBuilding extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int root; //!< key in data of the root of the sub-tree
+
+        SubtreeBuilding(final int root) { this.root = root; }
+
+        @Override
+        protected void compute() {
+            List<SubtreeBuilding> forked = new ArrayList<SubtreeBuilding>();
+            List<Integer> newRoots = new ArrayList<Integer>(2);
+            Integer next = root;
+
+            while (next != null) {
+                newRoots.clear();
+                processRoot(next, newRoots);
+
+                if (newRoots.size() == 2) { // the right sub-tree is forked
+                    SubtreeBuilding right = new SubtreeBuilding(newRoots.get(1));
+                    right.fork();
+                    forked.add(right);
+                }
+                next = newRoots.isEmpty() ? null : newRoots.get(0);
+            }
+
+            for (int i = forked.size() - 1; i >= 0; i--)
+                forked.get(i).join();
+        }
+
     }
 
 }
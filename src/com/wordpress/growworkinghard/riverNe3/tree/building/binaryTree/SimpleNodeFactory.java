@@ -60,6 +60,23 @@ public class SimpleNodeFactory {
      * @return The appropriate constructed node
      */
     public Component createNewNode(final Geometry root, final Geometry leftChild, final Geometry rightChild) {
+        return createNewNode(root, leftChild, rightChild, isGhost(root));
+    }
+
+    /**
+     * @brief Factory Method, for a builder which knows the ghost nodes
+     *
+     * @description A line of the input data may start and end in the same
+     *              point, so a builder which creates the ghost nodes itself
+     *              tells them apart explicitly.
+     *
+     * @param[in] root The root node
+     * @param[in] leftChild The left child node
+     * @param[in] rightChild The right child node
+     * @param[in] ghost <code>true</code> if the root is a ghost node
+     * @return The appropriate constructed node
+     */
+    public Component createNewNode(final Geometry root, final Geometry leftChild, final Geometry rightChild, final boolean ghost) {
 
         Connections conn;
         final Key ID = root.getKey();
@@ -73,7 +90,7 @@ public class SimpleNodeFactory {
         } else {
 
             conn = new BinaryConnections(ID);
-            return (isGhost(root)) ? new GhostNode(conn, layer, newGhostBasin(startPoint, endPoint)) :
+            return (ghost) ? new GhostNode(conn, layer, newGhostBasin(startPoint, endPoint)) :
                                      new Node(conn, layer, newBasin(startPoint, endPoint));
         }
 
@@ -0,0 +1,453 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.tree.building.binaryTree;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.composite.Component;
+import com.wordpress.growworkinghard.riverNe3.composite.key.Key;
+import com.wordpress.growworkinghard.riverNe3.dataReader.DataStreaming;
+import com.wordpress.growworkinghard.riverNe3.dataReader.GeometrySink;
+import com.wordpress.growworkinghard.riverNe3.geometry.Geometry;
+import com.wordpress.growworkinghard.riverNe3.geometry.Line;
+import com.wordpress.growworkinghard.riverNe3.tree.building.Tree;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * @brief The building of a Binary Tree for a River Net, streamed from the
+ *        reader
+ *
+ * @description RiverBinaryTree needs the whole input data in a
+ *              <tt>HashMap</tt>, which is copied in a
+ *              <tt>ConcurrentHashMap</tt>, and the tree is copied again
+ *              before being returned. This class builds the same tree keeping
+ *              only one copy of the network.
+ *              <p>
+ *              The file is read by a task of the executor, which hands each
+ *              record to a bounded <tt>BlockingQueue</tt>. Meanwhile the
+ *              calling thread takes the records from the queue and indexes
+ *              them on the coordinates of their ending point: each junction
+ *              collects the lines flowing into it, with their keys. Reading
+ *              and linking overlap, and the records are not stored anywhere
+ *              else.
+ *              </p>
+ *              <p>
+ *              The executor may be shared and busy, e.g. with the builds of
+ *              other basins: if the reading task has not started yet when the
+ *              calling thread finds the queue empty, the calling thread takes
+ *              the task over and links each record as soon as it reads it.
+ *              The build never waits for a task queued behind other tasks.
+ *              </p>
+ *              <p>
+ *              When the file is over, the tree is emitted from the roots: the
+ *              children of a line are the lines collected at its starting
+ *              point, sorted by the key given by the reader, and their keys in
+ *              the tree are computed from the key of the parent. If more than
+ *              two lines flow into the same junction, a ghost node takes the
+ *              place of the right child and the lines after the left one
+ *              become its children, exactly as in RiverBinaryTree, which also
+ *              takes the children in ascending order of key: the two classes
+ *              build the same tree whatever the order of the records. Ghost
+ *              nodes are flagged as such, because a real line may start and
+ *              end in the same point too. Emitting the tree is <em>O(N)</em>
+ *              and each junction is removed from the index once visited.
+ *              </p>
+ *              <p>
+ *              The coordinates are compared exactly. Snapping and fork/join
+ *              building are available only in RiverBinaryTree.
+ *              </p>
+ *              <p>
+ *              This class is <em>ThreadSafe</em> because the index is confined
+ *              to the thread calling StreamingRiverBinaryTree#computeNodes(),
+ *              which is <code>synchronized</code>, and the records are safely
+ *              published to it by the <tt>BlockingQueue</tt>.
+ *              </p>
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @version 0.1
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+@ThreadSafe
+public class StreamingRiverBinaryTree extends Tree {
+
+    private static final int QUEUE_CAPACITY = 1024; //!< records read and not linked yet
+    private static final long POLL_PERIOD = 100; //!< milliseconds between two checks of the reading task
+    private static final Record END_OF_STREAM = new Record(0, new Line()); //!< marker of the end of the records
+    private static final Comparator<Record> BY_KEY = new Comparator<Record>() { //!< ascending order of key
+            @Override
+            public int compare(final Record left, final Record right) {
+                return Integer.compare(left.key, right.key);
+            }
+        };
+
+    private final DataStreaming reader; //!< reader of the input file
+    private final ExecutorService executor; //!< executor running the reading task
+    private final BlockingQueue<Record> records; //!< records read and not linked yet
+    private final SimpleNodeFactory factory = new SimpleNodeFactory(); //!< simple factory in order to instantiate the proper type of node for each <tt>Geometry</tt> data
+    @GuardedBy("this") private final HashMap<Coordinate2D, List<Record>> junctions; //!< lines flowing into each junction
+    @GuardedBy("this") private final List<Geometry> roots; //!< roots of the network
+    @GuardedBy("this") private ReadingTask readingTask; //!< the reading task
+    @GuardedBy("this") private Future<Void> reading; //!< the reading task submitted to the executor
+    @GuardedBy("this") private boolean readInline; //!< true if the file has been read by the calling thread
+    @GuardedBy("this") private int readLines; //!< lines read
+    @GuardedBy("this") private int linkedLines; //!< lines added to the tree
+
+    /**
+     * @brief Constructor
+     *
+     * @param[in] reader The reader of the input file
+     * @param[in] executor The executor running the reading task, possibly
+     *            shared with other tasks
+     */
+    public StreamingRiverBinaryTree(final DataStreaming reader, final ExecutorService executor) {
+        validateInputData(reader, executor); // precondition
+
+        this.reader = reader;
+        this.executor = executor;
+        this.records = new ArrayBlockingQueue<Record>(QUEUE_CAPACITY);
+        this.junctions = new HashMap<Coordinate2D, List<Record>>();
+        this.roots = new ArrayList<Geometry>();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @description The input file is read again at each call.
+     *
+     * @see Tree#computeNodes()
+     */
+    @Override
+    public synchronized HashMap<Key, Component> computeNodes() {
+        junctions.clear();
+        roots.clear();
+        records.clear();
+        readLines = 0;
+        linkedLines = 0;
+        readInline = false;
+
+        readingTask = new ReadingTask();
+        reading = executor.submit(readingTask);
+        boolean linked = false;
+        try {
+            buildTree();
+            linked = true;
+        } finally {
+            if (!linked || readInline) reading.cancel(true); // the reader may be blocked on the full queue
+        }
+        if (!readInline) waitReading();
+
+        HashMap<Key, Component> tree = emitTree();
+        validateOutputData(tree); // postcondition
+        return tree;
+    }
+
+    /**
+     * @brief Link the records until the end of the stream
+     *
+     * @description The end of the stream is the marker queued by the reading
+     *              task or, if the reading task failed before queuing it, the
+     *              end of the reading task itself. If the executor has not
+     *              started the reading task, the file is read and linked by
+     *              the calling thread.
+     */
+    protected synchronized void buildTree() {
+        try {
+
+            while (true) {
+                Record record = records.poll(POLL_PERIOD, TimeUnit.MILLISECONDS);
+                if (record == END_OF_STREAM) break;
+                if (record != null) link(record);
+                else if (readingTask.claim()) { // still queued on the executor
+                    readInline();
+                    break;
+                } else if (reading.isDone() && records.isEmpty()) break;
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while linking the lines", e);
+        }
+    }
+
+    /**
+     * @brief Read the input file on the calling thread, linking each record
+     *
+     * @description An exception thrown by the reader is thrown again as an
+     *              <tt>IllegalStateException</tt>, as by
+     *              StreamingRiverBinaryTree#waitReading().
+     *
+     * @throws InterruptedException
+     */
+    private void readInline() throws InterruptedException {
+        readInline = true;
+        try {
+            reader.fileProcessing(new GeometrySink() {
+                    @Override
+                    public void put(final int key, final Geometry geometry) {
+                        link(new Record(key, geometry));
+                    }
+                });
+        } catch (IOException exception) {
+            throw new IllegalStateException("Reading of the input file failed", exception);
+        }
+    }
+
+    /**
+     * @brief Index a line on the junction it flows into
+     *
+     * @param[in] record The line just read, with its key
+     */
+    private void link(final Record record) {
+        readLines++;
+
+        Geometry line = record.line;
+
+        if (line.isRoot()) { // the roots do not flow into any junction of the net
+            roots.add(line);
+            return;
+        }
+
+        Coordinate2D endPoint = line.getEndPoint();
+        Coordinate2D junction = new Coordinate2D(endPoint.x, endPoint.y);
+        List<Record> tributaries = junctions.get(junction);
+        if (tributaries == null) {
+            tributaries = new ArrayList<Record>(2);
+            junctions.put(junction, tributaries);
+        }
+        tributaries.add(record);
+    }
+
+    /**
+     * @brief Wait for the end of the reading task
+     *
+     * @description An exception thrown by the reader is thrown again as an
+     *              <tt>IllegalStateException</tt>.
+     */
+    private void waitReading() {
+        try {
+            reading.get();
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Reading of the input file failed", exception.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the input file", e);
+        }
+    }
+
+    /**
+     * @brief Emit the nodes of the tree from the roots
+     *
+     * @description Each sub-tree is visited once, with an explicit stack
+     *              instead of the recursion, because chains of ghost nodes may
+     *              be much deeper than the layers of the network.
+     *
+     * @return The structure of the binary tree
+     * @throws IllegalStateException if two nodes have the same key
+     */
+    private HashMap<Key, Component> emitTree() {
+        HashMap<Key, Component> tree = new HashMap<Key, Component>(readLines * 4 / 3 + 1);
+        ArrayDeque<Subtree> stack = new ArrayDeque<Subtree>();
+
+        for (Geometry root : roots)
+            stack.push(new Subtree(root, tributariesOf(root), false));
+
+        while (!stack.isEmpty()) {
+            Subtree subtree = stack.pop();
+            Geometry root = subtree.root;
+            List<Geometry> children = subtree.children;
+
+            Geometry leftChild = (children.size() > 0) ? children.get(0) : null;
+            Geometry rightChild = (children.size() > 1) ? children.get(1) : null;
+            boolean ghostNode = children.size() > 2;
+
+            if (leftChild != null) setNewRoot(leftChild, root, true);
+            if (rightChild != null) setNewRoot(rightChild, root, false);
+
+            Component newNode = factory.createNewNode(root, leftChild, rightChild, subtree.ghost);
+            if (tree.put(newNode.getConnections().getID(), newNode) != null)
+                throw new IllegalStateException(RiverBinaryTree.collisionMessage(newNode));
+            if (!subtree.ghost) linkedLines++;
+
+            if (leftChild != null) stack.push(new Subtree(leftChild, tributariesOf(leftChild), false));
+
+            if (ghostNode) { // the ghost node takes the place of the right child
+                Geometry ghost = new Line(true, rightChild.getKey(), rightChild.getParentKey(), rightChild.getLayer(),
+                                          rightChild.getEndPoint(), rightChild.getEndPoint());
+                stack.push(new Subtree(ghost, children.subList(1, children.size()), true));
+            } else if (rightChild != null) {
+                stack.push(new Subtree(rightChild, tributariesOf(rightChild), false));
+            }
+        }
+
+        junctions.clear(); // lines never visited are not connected to any root
+        roots.clear();
+        return tree;
+    }
+
+    /**
+     * @brief The lines flowing into the starting point of a line
+     *
+     * @param[in] line The line
+     * @return The lines, in ascending order of key
+     */
+    private List<Geometry> tributariesOf(final Geometry line) {
+        List<Record> tributaries = junctions.remove(line.getStartPoint());
+        if (tributaries == null) return Collections.<Geometry>emptyList();
+
+        if (tributaries.size() > 1) Collections.sort(tributaries, BY_KEY);
+
+        List<Geometry> lines = new ArrayList<Geometry>(tributaries.size());
+        for (Record record : tributaries)
+            lines.add(record.line);
+        return lines;
+    }
+
+    /**
+     * @brief Set the root for the following subtrees
+     *
+     * @param[out] child The child which is going to become the new root
+     * @param[in] parent The actual root
+     * @param[in] leftChild <code>true</code> if the child is the left one
+     * @see RiverBinaryTree
+     */
+    private void setNewRoot(final Geometry child, final Geometry parent, final boolean leftChild) {
+
+        child.setRoot(true);
+        child.setParentKey(parent.getKey());
+        child.setLayer(parent.getLayer()+1);
+
+        double parentKey = parent.getKey().getDouble();
+        child.setKey(new Key(leftChild ? parentKey * 2 : parentKey * 2 + 1));
+
+    }
+
+    /**
+     * @brief Validation of the input data
+     *
+     * @param[in] reader The reader of the input file
+     * @param[in] executor The executor running the reading task
+     */
+    private void validateInputData(final DataStreaming reader, final ExecutorService executor) {
+        if (reader == null) {
+            String message = "The reader cannot be null.";
+            throw new NullPointerException(message);
+        }
+
+        if (executor == null) {
+            String message = "The executor cannot be null.";
+            throw new NullPointerException(message);
+        }
+    }
+
+    /**
+     * @brief Validation of the output data
+     *
+     * @param[in] tree The emitted tree
+     */
+    private void validateOutputData(final HashMap<Key, Component> tree) {
+        if (tree.isEmpty()) {
+            String message = "The output HashMap is empty.";
+            message += " Something was wrong during the computation";
+            throw new NullPointerException(message);
+        }
+
+        if (linkedLines != readLines) {
+            String message = "Computation not finished yet.";
+            message += " " + (readLines - linkedLines) + " lines are not connected to the main root.";
+            throw new UnsupportedOperationException(message);
+        }
+    }
+
+    private static class Subtree {
+
+        private final Geometry root; //!< root of the sub-tree
+        private final List<Geometry> children; //!< lines flowing into the starting point of the root
+        private final boolean ghost; //!< whether the root is a ghost node, not a line of the input data
+
+        Subtree(final Geometry root, final List<Geometry> children, final boolean ghost) {
+            this.root = root;
+            this.children = children;
+            this.ghost = ghost;
+        }
+
+    }
+
+    private static class Record {
+
+        private final int key; //!< key of the line given by the reader
+        private final Geometry line; //!< the line
+
+        Record(final int key, final Geometry line) {
+            this.key = key;
+            this.line = line;
+        }
+
+    }
+
+    private class ReadingTask implements Callable<Void>, GeometrySink {
+
+        private final AtomicBoolean started = new AtomicBoolean(); //!< true once the file is being read, by the executor or inline
+
+        /**
+         * @retval TRUE The caller has to read the file
+         * @retval FALSE The file is already being read
+         */
+        boolean claim() {
+            return started.compareAndSet(false, true);
+        }
+
+        @Override
+        public Void call() throws Exception {
+            if (!claim()) return null; // read by the calling thread
+
+            try {
+                reader.fileProcessing(this);
+            } finally {
+                records.offer(END_OF_STREAM); // if the queue is full, the linking thread checks the end of the task
+            }
+            return null;
+        }
+
+        @Override
+        public void put(final int key, final Geometry geometry) throws InterruptedException {
+            records.put(new Record(key, geometry));
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * GNU GPL v3 License
+ *
+ * Copyright 2015 AboutHydrology (Riccardo Rigon)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wordpress.growworkinghard.riverNe3.tree.building.binaryTree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import org.geotools.graph.util.geom.Coordinate2D;
+
+import com.wordpress.growworkinghard.riverNe3.geometry.Geometry;
+import com.wordpress.growworkinghard.riverNe3.geometry.Line;
+
+/**
+ * @brief Test of the hash index of the ending points
+ *
+ * @description The index is package-private, so its test is in its package.
+ *
+ * @author sidereus, francesco.serafin.3@gmail.com
+ * @date October 16, 2026
+ * @copyright GNU Public License v3 AboutHydrology (Riccardo Rigon)
+ */
+public class TestEndPointIndex {
+
+    private static final int COLUMNS = 40; //!< columns of the grid of ending points
+    private static final int ROWS = 25; //!< rows of the grid of ending points
+    private static final int MAX_BUCKET = 8; //!< candidates expected at most for each probe
+
+    @Test
+    public void testDegreeCoordinates() {
+
+        // a catchment of about a square kilometre in longitude and latitude
+        HashMap<Integer, Geometry> inputData = grid(11.0, 46.0, 3e-4, 4e-4);
+        EndPointIndex index = new EndPointIndex(inputData, EndPointIndex.cellSizeOf(inputData));
+
+        assertTrue("Cells not scaled on the data", index.getCellSize() < 1e-3);
+        assertTrue("Too few cells", index.getCellsCount() > inputData.size() / 4);
+        assertCandidates(inputData, index);
+
+    }
+
+    @Test
+    public void testMetricCoordinates() {
+
+        HashMap<Integer, Geometry> inputData = grid(650000.0, 5100000.0, 30.0, 40.0);
+        EndPointIndex index = new EndPointIndex(inputData, EndPointIndex.cellSizeOf(inputData));
+
+        assertTrue("Too few cells", index.getCellsCount() > inputData.size() / 4);
+        assertCandidates(inputData, index);
+
+    }
+
+    @Test
+    public void testAlignedAndCoincidentPoints() {
+
+        HashMap<Integer, Geometry> inputData = new HashMap<Integer, Geometry>();
+        for (int k = 1; k <= 100; k++) inputData.put(k, lineEndingIn(k * 0.01, 0.0));
+        assertEquals(0.01 * 99 / 100, EndPointIndex.cellSizeOf(inputData), 1e-15);
+
+        inputData.clear();
+        for (int k = 1; k <= 3; k++) inputData.put(k, lineEndingIn(5.0, 5.0));
+        assertEquals(EndPointIndex.DEFAULT_CELL_SIZE, EndPointIndex.cellSizeOf(inputData), 0.0);
+
+        List<Integer> candidates = new EndPointIndex(inputData, EndPointIndex.cellSizeOf(inputData)).candidates(new Coordinate2D(5.0, 5.0));
+        assertEquals("Keys not in ascending order", Arrays.asList(1, 2, 3), candidates);
+
+    }
+
+    @Test
+    public void testCandidatesWithinTolerance() {
+
+        HashMap<Integer, Geometry> inputData = grid(11.0, 46.0, 3e-4, 4e-4);
+        EndPointIndex index = new EndPointIndex(inputData, EndPointIndex.cellSizeOf(inputData));
+        double tolerance = index.getCellSize() / 10;
+
+        for (Integer key : inputData.keySet()) {
+            Coordinate2D end = inputData.get(key).getEndPoint();
+            Coordinate2D near = new Coordinate2D(end.x + tolerance / 2, end.y - tolerance / 2);
+            assertTrue("Line " + key + " not found", index.candidates(near, tolerance).contains(key));
+        }
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCellSize() {
+
+        new EndPointIndex(grid(0.0, 0.0, 1.0, 1.0), 0.0);
+
+    }
+
+    private static void assertCandidates(final HashMap<Integer, Geometry> inputData, final EndPointIndex index) {
+
+        for (Integer key : inputData.keySet()) {
+            List<Integer> candidates = index.candidates(inputData.get(key).getEndPoint());
+            assertTrue("Line " + key + " not found", candidates.contains(key));
+            assertTrue("Bucket of " + candidates.size() + " lines", candidates.size() <= MAX_BUCKET);
+        }
+
+    }
+
+    /**
+     * @brief Lines ending on a regular grid
+     *
+     * @param[in] x0 The abscissa of the first ending point
+     * @param[in] y0 The ordinate of the first ending point
+     * @param[in] dx The spacing of the columns
+     * @param[in] dy The spacing of the rows
+     * @return The input data
+     */
+    private static HashMap<Integer, Geometry> grid(final double x0, final double y0, final double dx, final double dy) {
+
+        HashMap<Integer, Geometry> inputData = new HashMap<Integer, Geometry>();
+        for (int i = 0; i < COLUMNS; i++)
+            for (int j = 0; j < ROWS; j++)
+                inputData.put(i * ROWS + j + 1, lineEndingIn(x0 + i * dx, y0 + j * dy));
+        return inputData;
+
+    }
+
+    private static Geometry lineEndingIn(final double x, final double y) {
+
+        Geometry line = new Line();
+        line.setStartPoint(x, y + 1.0);
+        line.setEndPoint(x, y);
+        return line;
+
+    }
+
+}